@@ -0,0 +1,78 @@
+package org.pycessing;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jep.JepException;
+import processing.awt.PGraphicsJava2D;
+import processing.core.PGraphics;
+
+// One draw() of a small sketch into an offscreen JAVA2D surface: frame state
+// sync, the Python call, the API calls it makes and the output drain.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+
+  @Param({ "false", "true" })
+  public boolean batched;
+
+  private PAppletConnector connector;
+  private ManagedInterpreter interpreter;
+  private PGraphics graphics;
+
+  @Setup
+  public void setUp() throws JepException {
+    connector = new PAppletConnector();
+    connector.setDebug(true);
+    graphics = new PGraphicsJava2D();
+    graphics.setParent(connector);
+    graphics.setPrimary(false);
+    graphics.setSize(200, 200);
+    graphics.image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+    connector.g = graphics;
+    connector.width = 200;
+    connector.height = 200;
+
+    interpreter = new ManagedInterpreter(connector);
+    interpreter.setOutputSink(new RingBufferSink());
+    connector.setInterpreter(interpreter);
+    interpreter.exec("batchDraw(" + (batched ? "True" : "False") + ")\n"
+        + "def draw():\n"
+        + "  background(0.0)\n"
+        + "  noStroke()\n"
+        + "  for i in range(20):\n"
+        + "    fill(i * 10.0, 100.0, 200.0)\n"
+        + "    ellipse(i * 10.0, 100.0, 8.0, 8.0)\n");
+  }
+
+  @TearDown
+  public void tearDown() throws JepException {
+    interpreter.close();
+  }
+
+  @Benchmark
+  public void draw() {
+    graphics.beginDraw();
+    connector.draw();
+    graphics.endDraw();
+    connector.frameCount++;
+  }
+
+}
@@ -0,0 +1,90 @@
+package org.pycessing;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jep.JepException;
+import jep.python.PyCallable;
+
+// Cost of single crossings between Java and the sketch's interpreter. Thread
+// scoped state is set up on the benchmark thread, which jep requires.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+
+  private ManagedInterpreter interpreter;
+  private PyCallable boundMethod;
+  private int counter;
+
+  @Setup
+  public void setUp() throws JepException {
+    // A real, unstarted sketch, so bound calls reach PApplet's own methods
+    interpreter = new ManagedInterpreter(new PAppletConnector());
+    // Output only goes to a ring buffer, so the console doesn't dominate the
+    // capture numbers
+    interpreter.setOutputSink(new RingBufferSink());
+    interpreter.exec("def draw():\n  pass\n");
+    interpreter.exec("def __bench_bound__():\n  return millis()\n");
+    boundMethod = interpreter.getValue("__bench_bound__", PyCallable.class);
+  }
+
+  @TearDown
+  public void tearDown() throws JepException {
+    boundMethod.close();
+    interpreter.close();
+  }
+
+  @Benchmark
+  public void exec() throws JepException {
+    interpreter.exec("x = 1");
+  }
+
+  @Benchmark
+  public boolean eval() throws JepException {
+    return interpreter.eval("x = 1");
+  }
+
+  @Benchmark
+  public void set() throws JepException {
+    interpreter.set("x", counter++);
+  }
+
+  @Benchmark
+  public Object getValue() throws JepException {
+    return interpreter.getValue("frameCount");
+  }
+
+  // Python calling a PApplet method bound by setPAppletMain
+  @Benchmark
+  public Object callBoundMethod() throws JepException {
+    return boundMethod.call();
+  }
+
+  @Benchmark
+  public boolean callSketchFunction() throws JepException {
+    return interpreter.callSketchFunction(ManagedInterpreter.DRAW);
+  }
+
+  // One print() and the drain that PAppletConnector.draw() does afterwards
+  @Benchmark
+  public String captureOutput() throws JepException {
+    interpreter.exec("print('x')");
+    return interpreter.getCapturedOutput();
+  }
+
+}
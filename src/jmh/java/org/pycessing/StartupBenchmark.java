@@ -0,0 +1,47 @@
+package org.pycessing;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jep.JepException;
+import jep.SubInterpreter;
+
+// Interpreter construction. A bare SubInterpreter is the floor; the difference
+// to ManagedInterpreter is output capture plus setPAppletMain.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Thread)
+public class StartupBenchmark {
+
+  private PAppletConnector connector;
+
+  @Setup
+  public void setUp() {
+    connector = new PAppletConnector();
+    RuntimeWarmup.start().join();
+  }
+
+  @Benchmark
+  public void subInterpreter() throws JepException {
+    new SubInterpreter(ManagedInterpreter.config()).close();
+  }
+
+  @Benchmark
+  public void managedInterpreter() throws JepException {
+    new ManagedInterpreter(connector).close();
+  }
+
+}
@@ -0,0 +1,109 @@
+package org.pycessing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncFileSink implements OutputSink {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+  private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+  // Compared by identity, never written
+  private static final String FLUSH = new String("flush");
+  private static final String CLOSE = new String("close");
+
+  private final BlockingQueue<String> queue;
+  private final BufferedWriter writer;
+  private final Thread writerThread;
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean closed = false;
+
+  public AsyncFileSink(Path path) throws IOException {
+    this(path, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  public AsyncFileSink(Path path, int queueCapacity) throws IOException {
+    queue = new ArrayBlockingQueue<String>(queueCapacity);
+    writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    writerThread = new Thread(this::writeLoop, "pycessing-output-" + path.getFileName());
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  // Never blocks the caller. If the disk can't keep up the output is dropped
+  // and counted rather than stalling the sketch.
+  @Override
+  public void write(String s) {
+    if (closed || !queue.offer(s)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void flush() {
+    queue.offer(FLUSH);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      // A writer that stopped on an IOException no longer drains the queue, so
+      // only wait for room while it's still running
+      boolean queued = false;
+      while (!queued && writerThread.isAlive()) {
+        queued = queue.offer(CLOSE, 100, TimeUnit.MILLISECONDS);
+      }
+      writerThread.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private void writeLoop() {
+    try {
+      while (true) {
+        String s = queue.take();
+        if (s == CLOSE) {
+          break;
+        } else if (s == FLUSH) {
+          writer.flush();
+        } else {
+          writer.write(s);
+          if (queue.isEmpty()) {
+            writer.flush();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Log.warn("AsyncFileSink interrupted");
+    } catch (IOException e) {
+      Log.error("AsyncFileSink: could not write the output", e);
+    } finally {
+      // Anything written from now on is dropped instead of filling the queue
+      closed = true;
+      try {
+        writer.close();
+      } catch (IOException e) {
+        Log.error("AsyncFileSink: could not close the output", e);
+      }
+    }
+  }
+
+}
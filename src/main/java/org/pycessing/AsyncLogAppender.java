@@ -0,0 +1,74 @@
+package org.pycessing;
+
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Callers only ever offer to a lock-free queue. A daemon thread does the
+// printing, so logging never waits on the console from the animation thread.
+class AsyncLogAppender {
+
+  private static class Record {
+    final Log.Level level;
+    final String msg;
+    final Throwable thrown;
+
+    Record(Log.Level level, String msg, Throwable thrown) {
+      this.level = level;
+      this.msg = msg;
+      this.thrown = thrown;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<Record>();
+  private final Object writeLock = new Object();
+  private final Thread writerThread;
+  private volatile boolean parked = false;
+
+  AsyncLogAppender() {
+    writerThread = new Thread(this::writeLoop, "pycessing-log");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "pycessing-log-flush"));
+  }
+
+  void append(Log.Level level, String msg, Throwable thrown) {
+    queue.offer(new Record(level, msg, thrown));
+    if (parked) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  void flush() {
+    drain();
+  }
+
+  private void writeLoop() {
+    while (true) {
+      if (!drain()) {
+        parked = true;
+        if (queue.isEmpty()) {
+          LockSupport.park(this);
+        }
+        parked = false;
+      }
+    }
+  }
+
+  private boolean drain() {
+    boolean wrote = false;
+    synchronized (writeLock) {
+      Record r;
+      while ((r = queue.poll()) != null) {
+        PrintStream stream = r.level.compareTo(Log.Level.WARN) >= 0 ? System.err : System.out;
+        stream.println(r.msg);
+        if (r.thrown != null) {
+          r.thrown.printStackTrace(stream);
+        }
+        wrote = true;
+      }
+    }
+    return wrote;
+  }
+
+}
@@ -0,0 +1,153 @@
+package org.pycessing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import processing.core.PApplet;
+
+// Draw calls that take a whole array of shapes at once: points(), lines(),
+// ellipses(), rects() and vertices() in Python. The Python side turns a NumPy
+// array, any buffer-protocol array or a list of tuples into packed float32
+// bytes in C, and the loop over the shapes runs here, so drawing 50,000 points
+// is one call into Java instead of 50,000.
+//
+// Each row of the data is one shape:
+//   points    x, y or x, y, z
+//   lines     x1, y1, x2, y2 or x1, y1, z1, x2, y2, z2
+//   ellipses  x, y, width, height (in the current ellipseMode)
+//   rects     x, y, width, height (in the current rectMode)
+//   vertices  x, y or x, y, z, between one beginShape()/endShape()
+public class BatchPrimitives {
+
+  private final PApplet applet;
+
+  public BatchPrimitives(PApplet applet) {
+    this.applet = applet;
+  }
+
+  public void points(byte[] data, int columns) {
+    FloatBuffer f = floats(data, columns, 2, 3);
+    if (columns == 2) {
+      while (f.hasRemaining()) {
+        applet.point(f.get(), f.get());
+      }
+    } else {
+      while (f.hasRemaining()) {
+        applet.point(f.get(), f.get(), f.get());
+      }
+    }
+  }
+
+  public void lines(byte[] data, int columns) {
+    FloatBuffer f = floats(data, columns, 4, 6);
+    if (columns == 4) {
+      while (f.hasRemaining()) {
+        applet.line(f.get(), f.get(), f.get(), f.get());
+      }
+    } else {
+      while (f.hasRemaining()) {
+        applet.line(f.get(), f.get(), f.get(), f.get(), f.get(), f.get());
+      }
+    }
+  }
+
+  public void ellipses(byte[] data, int columns) {
+    FloatBuffer f = floats(data, columns, 4, 4);
+    while (f.hasRemaining()) {
+      applet.ellipse(f.get(), f.get(), f.get(), f.get());
+    }
+  }
+
+  public void rects(byte[] data, int columns) {
+    FloatBuffer f = floats(data, columns, 4, 4);
+    while (f.hasRemaining()) {
+      applet.rect(f.get(), f.get(), f.get(), f.get());
+    }
+  }
+
+  // kind is a beginShape() kind such as POINTS or TRIANGLES, or -1 for a
+  // polygon
+  public void vertices(byte[] data, int columns, int kind, boolean close) {
+    FloatBuffer f = floats(data, columns, 2, 3);
+    if (kind < 0) {
+      applet.beginShape();
+    } else {
+      applet.beginShape(kind);
+    }
+    if (columns == 2) {
+      while (f.hasRemaining()) {
+        applet.vertex(f.get(), f.get());
+      }
+    } else {
+      while (f.hasRemaining()) {
+        applet.vertex(f.get(), f.get(), f.get());
+      }
+    }
+    if (close) {
+      applet.endShape(PApplet.CLOSE);
+    } else {
+      applet.endShape();
+    }
+  }
+
+  private static FloatBuffer floats(byte[] data, int columns, int flat, int deep) {
+    if (columns != flat && columns != deep) {
+      throw new IllegalArgumentException("Expected " + flat + (flat == deep ? "" : " or " + deep)
+          + " values per row, got " + columns);
+    }
+    if (data.length % (columns * 4) != 0) {
+      throw new IllegalArgumentException(data.length / 4 + " values is not a whole number of rows of " + columns);
+    }
+    return ByteBuffer.wrap(data).order(ByteOrder.nativeOrder()).asFloatBuffer();
+  }
+
+  static String pythonSource() {
+    return PYTHON_SOURCE;
+  }
+
+  // __pyc_floats__ returns the data as native-order float32 bytes and the
+  // number of values per row, taken from the data's shape when it has one
+  private static final String PYTHON_SOURCE = "def __pyc_floats__(data, columns):\n"
+      + "  if hasattr(data, '__array_interface__'):\n"
+      + "    import numpy\n"
+      + "    a = numpy.ascontiguousarray(data, dtype=numpy.float32)\n"
+      + "    if a.ndim == 2:\n"
+      + "      columns = a.shape[1]\n"
+      + "    return a.tobytes(), columns\n"
+      + "  try:\n"
+      + "    view = memoryview(data)\n"
+      + "  except TypeError:\n"
+      + "    view = None\n"
+      + "  if view is not None:\n"
+      + "    if view.ndim == 2:\n"
+      + "      columns = view.shape[1]\n"
+      + "    if view.format == 'f' and view.c_contiguous:\n"
+      + "      return view.tobytes(), columns\n"
+      + "    values = view.tolist()\n"
+      + "    if view.ndim == 2:\n"
+      + "      values = [v for row in values for v in row]\n"
+      + "    return __pyc_array__('f', values).tobytes(), columns\n"
+      + "  values = list(data)\n"
+      + "  if values and hasattr(values[0], '__len__'):\n"
+      + "    columns = len(values[0])\n"
+      + "    values = [v for row in values for v in row]\n"
+      + "  return __pyc_array__('f', values).tobytes(), columns\n"
+      + "def __pyc_primitive__(kind, columns):\n"
+      + "  primitives = __pyc_primitives__\n"
+      + "  def draw(data):\n"
+      + "    __pyc_batch__.direct()\n"
+      + "    floats, n = __pyc_floats__(data, columns)\n"
+      + "    getattr(primitives, kind)(floats, n)\n"
+      + "  draw.__name__ = kind\n"
+      + "  return draw\n"
+      + "points = __pyc_primitive__('points', 2)\n"
+      + "lines = __pyc_primitive__('lines', 4)\n"
+      + "ellipses = __pyc_primitive__('ellipses', 4)\n"
+      + "rects = __pyc_primitive__('rects', 4)\n"
+      + "def vertices(data, kind=None, close=False):\n"
+      + "  __pyc_batch__.direct()\n"
+      + "  floats, n = __pyc_floats__(data, 2)\n"
+      + "  __pyc_primitives__.vertices(floats, n, -1 if kind is None else kind, bool(close))\n";
+
+}
@@ -0,0 +1,183 @@
+package org.pycessing;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+// Writes the pycessing Python module: the PApplet API names and every PConstants
+// value as a Python literal. The build runs main() once the classes are
+// compiled (see the exec-maven-plugin execution in pom.xml), so interpreters
+// only exec the finished source. SketchNamespace falls back to generate() when
+// the classes weren't built by Maven.
+public class BindingGenerator {
+
+  private BindingGenerator() {
+  }
+
+  // The public PApplet methods, less the sketch functions, which are defined by
+  // the sketch, not bound to PAppletMain. Binding them would make an undefined
+  // handler call back into itself.
+  static String[] apiNames() {
+    TreeSet<String> api = new TreeSet<String>();
+    for (Method method : PApplet.class.getDeclaredMethods()) {
+      if (!Modifier.isPublic(method.getModifiers())) {
+        continue;
+      }
+      String name = method.getName();
+      if (ManagedInterpreter.SKETCH_FUNCTIONS.contains(name) || name.equals("print")) {
+        continue;
+      }
+      api.add(name);
+    }
+    return api.toArray(new String[api.size()]);
+  }
+
+  // PApplet hands drawing to its PGraphics, so the API names PGraphics also has
+  // are the ones that read or change the graphics state
+  static String[] graphicsNames(String[] apiNames) {
+    List<String> api = Arrays.asList(apiNames);
+    TreeSet<String> graphics = new TreeSet<String>();
+    for (Method method : PGraphics.class.getMethods()) {
+      if (!Modifier.isStatic(method.getModifiers()) && api.contains(method.getName())) {
+        graphics.add(method.getName());
+      }
+    }
+    return graphics.toArray(new String[graphics.size()]);
+  }
+
+  // The graphics names that may draw, less the common ones that only ask something
+  static String[] drawingNames(String[] graphicsNames) {
+    TreeSet<String> drawing = new TreeSet<String>(Arrays.asList(graphicsNames));
+    drawing.removeAll(Arrays.asList("color", "red", "green", "blue", "alpha", "hue", "saturation", "brightness",
+        "lerpColor", "textWidth", "textAscent", "textDescent", "get", "screenX", "screenY", "screenZ",
+        "modelX", "modelY", "modelZ", "getMatrix", "printMatrix", "printCamera", "printProjection"));
+    return drawing.toArray(new String[drawing.size()]);
+  }
+
+  // Fills names and values with PConstants, then frameCount, which is
+  // overwritten by the first FrameState sync, but sketches may read it before then
+  static void constants(List<String> names, List<Object> values) {
+    for (Field field : PConstants.class.getDeclaredFields()) {
+      if (!Modifier.isPublic(field.getModifiers()) || !Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+      try {
+        Object value = field.get(null);
+        names.add(field.getName());
+        values.add(value);
+      } catch (IllegalAccessException e) {
+        Log.error("BindingGenerator: could not read " + field.getName(), e);
+      }
+    }
+    names.add(FrameState.FRAME_COUNT);
+    values.add(0);
+  }
+
+  // The module's source. __bind__(target) binds every API name to target and
+  // must be called before anything is imported from it.
+  public static String generate() {
+    String[] api = apiNames();
+    ArrayList<String> names = new ArrayList<String>();
+    ArrayList<Object> values = new ArrayList<Object>();
+    constants(names, values);
+
+    StringBuilder source = new StringBuilder();
+    source.append("# Generated from PApplet and PConstants by org.pycessing.BindingGenerator. Do not edit.\n");
+    source.append("API_NAMES = ").append(tuple(api)).append('\n');
+    String[] graphics = graphicsNames(api);
+    source.append("GRAPHICS_NAMES = ").append(tuple(graphics)).append('\n');
+    source.append("DRAWING_NAMES = ").append(tuple(drawingNames(graphics))).append('\n');
+    source.append("CONSTANT_NAMES = ").append(tuple(names.toArray())).append('\n');
+    for (int i = 0; i < names.size(); i++) {
+      source.append(names.get(i)).append(" = ").append(literal(values.get(i))).append('\n');
+    }
+    source.append("PAppletMain = None\n")
+        .append("def __bind__(target):\n")
+        .append("  g = globals()\n")
+        .append("  g['PAppletMain'] = target\n")
+        .append("  for name in API_NAMES:\n")
+        .append("    g[name] = getattr(target, name)\n")
+        .append("__all__ = ('PAppletMain',) + API_NAMES + CONSTANT_NAMES\n");
+    return source.toString();
+  }
+
+  private static String tuple(Object[] values) {
+    StringBuilder tuple = new StringBuilder("(");
+    for (Object value : values) {
+      tuple.append(literal(value)).append(',');
+    }
+    return tuple.append(')').toString();
+  }
+
+  // The value jep would have converted it to: chars become one character
+  // strings and arrays become tuples
+  static String literal(Object value) {
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return value.toString();
+    }
+    if (value instanceof Boolean) {
+      return ((Boolean) value) ? "True" : "False";
+    }
+    if (value instanceof Float || value instanceof Double) {
+      double d = ((Number) value).doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        return "float('" + d + "')";
+      }
+      return Double.toString(d);
+    }
+    if (value instanceof Character || value instanceof String) {
+      return string(value.toString());
+    }
+    if (value != null && value.getClass().isArray()) {
+      Object[] items = new Object[Array.getLength(value)];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = Array.get(value, i);
+      }
+      return tuple(items);
+    }
+    throw new IllegalArgumentException("No Python literal for " + value);
+  }
+
+  private static String string(String value) {
+    StringBuilder string = new StringBuilder("'");
+    for (char c : value.toCharArray()) {
+      if (c == '\'' || c == '\\') {
+        string.append('\\').append(c);
+      } else if (c >= ' ' && c < 0x7f) {
+        string.append(c);
+      } else {
+        string.append(String.format("\\u%04x", (int) c));
+      }
+    }
+    return string.append('\'').toString();
+  }
+
+  // Writes the module into the class output directory given as the only
+  // argument, next to SketchNamespace
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("usage: BindingGenerator <class output directory>");
+      System.exit(1);
+    }
+    Path module = Paths.get(args[0], SketchNamespace.class.getPackage().getName().replace('.', '/'),
+        SketchNamespace.RESOURCE);
+    Files.createDirectories(module.getParent());
+    Files.write(module, generate().getBytes(StandardCharsets.UTF_8));
+    System.out.println("Wrote " + module);
+  }
+
+}
@@ -0,0 +1,123 @@
+package org.pycessing;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Compiled code for sketch scripts, and for the modules they import from the
+// sketch's folder, kept on disk between runs. There is one entry per file and
+// Python, named by a SHA-256 of the Python magic number and version and the
+// file's path. It starts with a SHA-256 of the source it was compiled from, so
+// an edited file misses and its entry is replaced rather than joined by
+// another. A hit is one marshal.loads() instead of a compile.
+//
+// -Dpycessing.bytecode.cache=<dir> moves the cache; "off" (or empty) turns it
+// off and scripts are run by jep directly as before.
+public class BytecodeCache {
+
+  public static final String DIRECTORY_PROPERTY = "pycessing.bytecode.cache";
+
+  private BytecodeCache() {
+  }
+
+  // null when the cache is off
+  public static Path getDirectory() {
+    String directory = System.getProperty(DIRECTORY_PROPERTY);
+    if (directory == null) {
+      return Paths.get(System.getProperty("user.home"), ".pycessing", "bytecode");
+    }
+    directory = directory.trim();
+    if (directory.isEmpty() || directory.equalsIgnoreCase("off")) {
+      return null;
+    }
+    return Paths.get(directory);
+  }
+
+  // Defines __pycessing_run_cached__(path, directory), which runs a script
+  // through the cache, __pyc_cached_code__(path, directory), which only returns
+  // its code, and a sys.meta_path finder for the script's folder so its helper
+  // modules are loaded through the cache too
+  static String pythonSource() {
+    return PYTHON_SOURCE;
+  }
+
+  private static final String PYTHON_SOURCE = "import sys as __pyc_sys__\n"
+      + "class __PycBytecodeCache__(object):\n"
+      + "  def __init__(self, directory):\n"
+      + "    import os, hashlib, marshal, importlib.util\n"
+      + "    self.directory = directory\n"
+      + "    self.os = os\n"
+      + "    self.hashlib = hashlib\n"
+      + "    self.marshal = marshal\n"
+      + "    self.tag = importlib.util.MAGIC_NUMBER + __pyc_sys__.version.encode()\n"
+      + "    self.hits = 0\n"
+      + "    self.misses = 0\n"
+      + "  def code(self, path):\n"
+      + "    with open(path, 'rb') as f:\n"
+      + "      source = f.read()\n"
+      + "    digest = self.hashlib.sha256(source).digest()\n"
+      + "    key = self.hashlib.sha256(self.tag + path.encode()).hexdigest()\n"
+      + "    cached = self.os.path.join(self.directory, key + '.pyc')\n"
+      + "    try:\n"
+      + "      with open(cached, 'rb') as f:\n"
+      + "        data = f.read()\n"
+      + "      if data[:len(digest)] == digest:\n"
+      + "        code = self.marshal.loads(data[len(digest):])\n"
+      + "        self.hits += 1\n"
+      + "        return code\n"
+      + "    except (OSError, EOFError, ValueError, TypeError):\n"
+      + "      pass\n"
+      + "    self.misses += 1\n"
+      + "    code = compile(source, path, 'exec', dont_inherit=True)\n"
+      + "    try:\n"
+      + "      self.os.makedirs(self.directory, exist_ok=True)\n"
+      + "      temp = '%s.%d.tmp' % (cached, self.os.getpid())\n"
+      + "      with open(temp, 'wb') as f:\n"
+      + "        f.write(digest + self.marshal.dumps(code))\n"
+      + "      self.os.replace(temp, cached)\n"
+      + "    except OSError:\n"
+      + "      pass\n"
+      + "    return code\n"
+      + "class __PycSketchFinder__(object):\n"
+      + "  def __init__(self, directory, cache):\n"
+      + "    import importlib.machinery, importlib.util\n"
+      + "    self.directory = directory\n"
+      + "    self.cache = cache\n"
+      + "    self.util = importlib.util\n"
+      + "    finder = self\n"
+      + "    class Loader(importlib.machinery.SourceFileLoader):\n"
+      + "      def get_code(self, fullname):\n"
+      + "        return finder.cache.code(self.get_filename(fullname))\n"
+      + "    self.loader = Loader\n"
+      + "  def find_spec(self, name, path=None, target=None):\n"
+      + "    import os\n"
+      + "    if path is None:\n"
+      + "      dirs = [self.directory]\n"
+      + "    else:\n"
+      + "      dirs = [p for p in path if os.path.abspath(p) == self.directory or os.path.abspath(p).startswith(self.directory + os.sep)]\n"
+      + "    leaf = name.rpartition('.')[2]\n"
+      + "    for d in dirs:\n"
+      + "      package = os.path.join(d, leaf)\n"
+      + "      init = os.path.join(package, '__init__.py')\n"
+      + "      if os.path.isfile(init):\n"
+      + "        return self.util.spec_from_file_location(name, init, loader=self.loader(name, init), submodule_search_locations=[package])\n"
+      + "      module = os.path.join(d, leaf + '.py')\n"
+      + "      if os.path.isfile(module):\n"
+      + "        return self.util.spec_from_file_location(name, module, loader=self.loader(name, module))\n"
+      + "    return None\n"
+      + "def __pyc_cached_code__(path, directory):\n"
+      + "  import os\n"
+      + "  path = os.path.abspath(path)\n"
+      + "  g = globals()\n"
+      + "  cache = g.get('__pyc_bytecode_cache__')\n"
+      + "  if cache is None or cache.directory != directory:\n"
+      + "    cache = __PycBytecodeCache__(directory)\n"
+      + "    g['__pyc_bytecode_cache__'] = cache\n"
+      + "  sketch_dir = os.path.dirname(path)\n"
+      + "  __pyc_sys__.meta_path[:] = [f for f in __pyc_sys__.meta_path if not isinstance(f, __PycSketchFinder__)]\n"
+      + "  __pyc_sys__.meta_path.insert(0, __PycSketchFinder__(sketch_dir, cache))\n"
+      + "  return cache.code(path)\n"
+      + "def __pycessing_run_cached__(path, directory):\n"
+      + "  import builtins\n"
+      + "  builtins.exec(__pyc_cached_code__(path, directory), globals())\n";
+
+}
@@ -0,0 +1,14 @@
+package org.pycessing;
+
+public class DiscardSink implements OutputSink {
+
+  @Override
+  public void write(String s) {}
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+}
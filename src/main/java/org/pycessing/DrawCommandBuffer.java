@@ -0,0 +1,344 @@
+package org.pycessing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.core.PApplet;
+
+// Recording mode for draw calls. While batchDraw(True) is on, Python appends
+// the calls listed below to two flat arrays (opcodes and float arguments)
+// instead of calling into Java for each one. The arrays are handed over in
+// one call and replayed here, through the same PApplet methods immediate mode
+// would have called, at the end of every sketch function and before any call
+// that isn't recorded.
+public class DrawCommandBuffer {
+
+  public static final int POINT_2 = 0;
+  public static final int POINT_3 = 1;
+  public static final int LINE_4 = 2;
+  public static final int LINE_6 = 3;
+  public static final int RECT_4 = 4;
+  public static final int RECT_5 = 5;
+  public static final int RECT_8 = 6;
+  public static final int ELLIPSE_4 = 7;
+  public static final int ARC_6 = 8;
+  public static final int ARC_7 = 9;
+  public static final int TRIANGLE_6 = 10;
+  public static final int QUAD_8 = 11;
+  public static final int BEZIER_8 = 12;
+  public static final int CURVE_8 = 13;
+  public static final int BEGIN_SHAPE_0 = 14;
+  public static final int BEGIN_SHAPE_1 = 15;
+  public static final int END_SHAPE_0 = 16;
+  public static final int END_SHAPE_1 = 17;
+  public static final int VERTEX_2 = 18;
+  public static final int VERTEX_3 = 19;
+  public static final int CURVE_VERTEX_2 = 20;
+  public static final int BEZIER_VERTEX_6 = 21;
+  public static final int QUADRATIC_VERTEX_4 = 22;
+  public static final int FILL_1 = 23;
+  public static final int FILL_2 = 24;
+  public static final int FILL_3 = 25;
+  public static final int FILL_4 = 26;
+  public static final int NO_FILL_0 = 27;
+  public static final int STROKE_1 = 28;
+  public static final int STROKE_2 = 29;
+  public static final int STROKE_3 = 30;
+  public static final int STROKE_4 = 31;
+  public static final int NO_STROKE_0 = 32;
+  public static final int STROKE_WEIGHT_1 = 33;
+  public static final int BACKGROUND_1 = 34;
+  public static final int BACKGROUND_2 = 35;
+  public static final int BACKGROUND_3 = 36;
+  public static final int BACKGROUND_4 = 37;
+  public static final int PUSH_MATRIX_0 = 38;
+  public static final int POP_MATRIX_0 = 39;
+  public static final int PUSH_STYLE_0 = 40;
+  public static final int POP_STYLE_0 = 41;
+  public static final int RESET_MATRIX_0 = 42;
+  public static final int TRANSLATE_2 = 43;
+  public static final int TRANSLATE_3 = 44;
+  public static final int ROTATE_1 = 45;
+  public static final int SCALE_1 = 46;
+  public static final int SCALE_2 = 47;
+  public static final int RECT_MODE_1 = 48;
+  public static final int ELLIPSE_MODE_1 = 49;
+
+  private static final int OPCODES = 50;
+
+  private static final String[] NAME = new String[OPCODES];
+  private static final int[] ARITY = new int[OPCODES];
+  // fill/stroke/background have int overloads that take a color rather than a
+  // gray value. When Python passes an int for those the call is not recorded,
+  // so jep picks the overload exactly as it would in immediate mode.
+  private static final boolean[] INT_FIRST_IS_COLOR = new boolean[OPCODES];
+
+  private static void command(int opcode, String name, int arity) {
+    NAME[opcode] = name;
+    ARITY[opcode] = arity;
+  }
+
+  private static void colorCommand(int opcode, String name, int arity) {
+    command(opcode, name, arity);
+    INT_FIRST_IS_COLOR[opcode] = arity <= 2;
+  }
+
+  static {
+    command(POINT_2, "point", 2);
+    command(POINT_3, "point", 3);
+    command(LINE_4, "line", 4);
+    command(LINE_6, "line", 6);
+    command(RECT_4, "rect", 4);
+    command(RECT_5, "rect", 5);
+    command(RECT_8, "rect", 8);
+    command(ELLIPSE_4, "ellipse", 4);
+    command(ARC_6, "arc", 6);
+    command(ARC_7, "arc", 7);
+    command(TRIANGLE_6, "triangle", 6);
+    command(QUAD_8, "quad", 8);
+    command(BEZIER_8, "bezier", 8);
+    command(CURVE_8, "curve", 8);
+    command(BEGIN_SHAPE_0, "beginShape", 0);
+    command(BEGIN_SHAPE_1, "beginShape", 1);
+    command(END_SHAPE_0, "endShape", 0);
+    command(END_SHAPE_1, "endShape", 1);
+    command(VERTEX_2, "vertex", 2);
+    command(VERTEX_3, "vertex", 3);
+    command(CURVE_VERTEX_2, "curveVertex", 2);
+    command(BEZIER_VERTEX_6, "bezierVertex", 6);
+    command(QUADRATIC_VERTEX_4, "quadraticVertex", 4);
+    colorCommand(FILL_1, "fill", 1);
+    colorCommand(FILL_2, "fill", 2);
+    colorCommand(FILL_3, "fill", 3);
+    colorCommand(FILL_4, "fill", 4);
+    command(NO_FILL_0, "noFill", 0);
+    colorCommand(STROKE_1, "stroke", 1);
+    colorCommand(STROKE_2, "stroke", 2);
+    colorCommand(STROKE_3, "stroke", 3);
+    colorCommand(STROKE_4, "stroke", 4);
+    command(NO_STROKE_0, "noStroke", 0);
+    command(STROKE_WEIGHT_1, "strokeWeight", 1);
+    colorCommand(BACKGROUND_1, "background", 1);
+    colorCommand(BACKGROUND_2, "background", 2);
+    colorCommand(BACKGROUND_3, "background", 3);
+    colorCommand(BACKGROUND_4, "background", 4);
+    command(PUSH_MATRIX_0, "pushMatrix", 0);
+    command(POP_MATRIX_0, "popMatrix", 0);
+    command(PUSH_STYLE_0, "pushStyle", 0);
+    command(POP_STYLE_0, "popStyle", 0);
+    command(RESET_MATRIX_0, "resetMatrix", 0);
+    command(TRANSLATE_2, "translate", 2);
+    command(TRANSLATE_3, "translate", 3);
+    command(ROTATE_1, "rotate", 1);
+    command(SCALE_1, "scale", 1);
+    command(SCALE_2, "scale", 2);
+    command(RECT_MODE_1, "rectMode", 1);
+    command(ELLIPSE_MODE_1, "ellipseMode", 1);
+  }
+
+  public static boolean isRecorded(String name) {
+    for (int op = 0; op < OPCODES; op++) {
+      if (NAME[op].equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static int getArity(int opcode) {
+    return ARITY[opcode];
+  }
+
+  // Both arrays are in the layout of Python's array('i') and array('f'),
+  // which is native byte order
+  public static void replay(PApplet applet, byte[] ops, byte[] args) {
+    replay(applet,
+        ByteBuffer.wrap(ops).order(ByteOrder.nativeOrder()).asIntBuffer(),
+        ByteBuffer.wrap(args).order(ByteOrder.nativeOrder()).asFloatBuffer());
+  }
+
+  public static void replay(PApplet applet, IntBuffer ops, FloatBuffer args) {
+    float[] a = new float[12];
+    while (ops.hasRemaining()) {
+      int op = ops.get();
+      if (op < 0 || op >= OPCODES) {
+        throw new IllegalArgumentException("Unknown draw command " + op);
+      }
+      args.get(a, 0, ARITY[op]);
+      switch (op) {
+        case POINT_2: applet.point(a[0], a[1]); break;
+        case POINT_3: applet.point(a[0], a[1], a[2]); break;
+        case LINE_4: applet.line(a[0], a[1], a[2], a[3]); break;
+        case LINE_6: applet.line(a[0], a[1], a[2], a[3], a[4], a[5]); break;
+        case RECT_4: applet.rect(a[0], a[1], a[2], a[3]); break;
+        case RECT_5: applet.rect(a[0], a[1], a[2], a[3], a[4]); break;
+        case RECT_8: applet.rect(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]); break;
+        case ELLIPSE_4: applet.ellipse(a[0], a[1], a[2], a[3]); break;
+        case ARC_6: applet.arc(a[0], a[1], a[2], a[3], a[4], a[5]); break;
+        case ARC_7: applet.arc(a[0], a[1], a[2], a[3], a[4], a[5], (int) a[6]); break;
+        case TRIANGLE_6: applet.triangle(a[0], a[1], a[2], a[3], a[4], a[5]); break;
+        case QUAD_8: applet.quad(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]); break;
+        case BEZIER_8: applet.bezier(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]); break;
+        case CURVE_8: applet.curve(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]); break;
+        case BEGIN_SHAPE_0: applet.beginShape(); break;
+        case BEGIN_SHAPE_1: applet.beginShape((int) a[0]); break;
+        case END_SHAPE_0: applet.endShape(); break;
+        case END_SHAPE_1: applet.endShape((int) a[0]); break;
+        case VERTEX_2: applet.vertex(a[0], a[1]); break;
+        case VERTEX_3: applet.vertex(a[0], a[1], a[2]); break;
+        case CURVE_VERTEX_2: applet.curveVertex(a[0], a[1]); break;
+        case BEZIER_VERTEX_6: applet.bezierVertex(a[0], a[1], a[2], a[3], a[4], a[5]); break;
+        case QUADRATIC_VERTEX_4: applet.quadraticVertex(a[0], a[1], a[2], a[3]); break;
+        case FILL_1: applet.fill(a[0]); break;
+        case FILL_2: applet.fill(a[0], a[1]); break;
+        case FILL_3: applet.fill(a[0], a[1], a[2]); break;
+        case FILL_4: applet.fill(a[0], a[1], a[2], a[3]); break;
+        case NO_FILL_0: applet.noFill(); break;
+        case STROKE_1: applet.stroke(a[0]); break;
+        case STROKE_2: applet.stroke(a[0], a[1]); break;
+        case STROKE_3: applet.stroke(a[0], a[1], a[2]); break;
+        case STROKE_4: applet.stroke(a[0], a[1], a[2], a[3]); break;
+        case NO_STROKE_0: applet.noStroke(); break;
+        case STROKE_WEIGHT_1: applet.strokeWeight(a[0]); break;
+        case BACKGROUND_1: applet.background(a[0]); break;
+        case BACKGROUND_2: applet.background(a[0], a[1]); break;
+        case BACKGROUND_3: applet.background(a[0], a[1], a[2]); break;
+        case BACKGROUND_4: applet.background(a[0], a[1], a[2], a[3]); break;
+        case PUSH_MATRIX_0: applet.pushMatrix(); break;
+        case POP_MATRIX_0: applet.popMatrix(); break;
+        case PUSH_STYLE_0: applet.pushStyle(); break;
+        case POP_STYLE_0: applet.popStyle(); break;
+        case RESET_MATRIX_0: applet.resetMatrix(); break;
+        case TRANSLATE_2: applet.translate(a[0], a[1]); break;
+        case TRANSLATE_3: applet.translate(a[0], a[1], a[2]); break;
+        case ROTATE_1: applet.rotate(a[0]); break;
+        case SCALE_1: applet.scale(a[0]); break;
+        case SCALE_2: applet.scale(a[0], a[1]); break;
+        case RECT_MODE_1: applet.rectMode((int) a[0]); break;
+        case ELLIPSE_MODE_1: applet.ellipseMode((int) a[0]); break;
+      }
+    }
+  }
+
+  // {'name': ({arity: opcode}, (arities where an int first argument is a color)), ...}
+  static String opcodeTable() {
+    Map<String, StringBuilder> ops = new LinkedHashMap<String, StringBuilder>();
+    Map<String, StringBuilder> intFirst = new LinkedHashMap<String, StringBuilder>();
+    for (int op = 0; op < OPCODES; op++) {
+      if (!ops.containsKey(NAME[op])) {
+        ops.put(NAME[op], new StringBuilder());
+        intFirst.put(NAME[op], new StringBuilder());
+      }
+      ops.get(NAME[op]).append(ARITY[op]).append(": ").append(op).append(", ");
+      if (INT_FIRST_IS_COLOR[op]) {
+        intFirst.get(NAME[op]).append(ARITY[op]).append(", ");
+      }
+    }
+    StringBuilder table = new StringBuilder("{");
+    for (String name : ops.keySet()) {
+      table.append('\'').append(name).append("': ({").append(ops.get(name))
+          .append("}, (").append(intFirst.get(name)).append(")), ");
+    }
+    return table.append('}').toString();
+  }
+
+  // Expects PAppletMain, managedinterpreter, __pyc_api_names__ and the pycessing
+  // module to be set. Installing the wrappers puts them in the module too.
+  // direct() comes before any call that draws without being recorded, including
+  // the array primitives and the pixel array. While recording for RetainedCache
+  // it marks the recording spoiled; calls that don't draw run without flushing.
+  // With a FramePipeline it waits for the animation thread, and batchDraw()
+  // can't be turned off. Calls that read the graphics state (color(), get(),
+  // screenX() and so on) then go through direct() too: a flush would only defer
+  // the frame's calls, and the previous frame may still be drawing. A recorded
+  // call whose arguments aren't all numbers leaves nothing behind and runs
+  // directly instead, so jep raises the error it always did.
+  static String pythonSource() {
+    return PYTHON_SOURCE;
+  }
+
+  private static final String PYTHON_SOURCE = "from array import array as __pyc_array__\n"
+        + "class __PycDrawBatch__(object):\n"
+        + "  def __init__(self, target):\n"
+        + "    self.target = target\n"
+        + "    self.ops = __pyc_array__('i')\n"
+        + "    self.args = __pyc_array__('f')\n"
+        + "    self.enabled = False\n"
+        + "    self.installed = False\n"
+        + "    self.recording = False\n"
+        + "    self.spoiled = False\n"
+        + "    self.pipeline = None\n"
+        + "  def flush(self):\n"
+        + "    if self.ops:\n"
+        + "      ops = self.ops.tobytes()\n"
+        + "      args = self.args.tobytes()\n"
+        + "      del self.ops[:]\n"
+        + "      del self.args[:]\n"
+        + "      self.target.replayCommands(ops, args)\n"
+        + "  def direct(self):\n"
+        + "    if self.recording:\n"
+        + "      self.spoiled = True\n"
+        + "    if self.pipeline is not None:\n"
+        + "      self.pipeline.beginDirect()\n"
+        + "    if self.ops:\n"
+        + "      self.flush()\n"
+        + "__pyc_batch__ = __PycDrawBatch__(PAppletMain)\n"
+        + "__pyc_recorded_ops__ = " + opcodeTable() + "\n"
+        + "def __pyc_recorded__(direct, ops, int_first):\n"
+        + "  batch = __pyc_batch__\n"
+        + "  def call(*args):\n"
+        + "    if batch.enabled:\n"
+        + "      n = len(args)\n"
+        + "      op = ops.get(n)\n"
+        + "      if op is not None and not (n in int_first and type(args[0]) is int):\n"
+        + "        size = len(batch.args)\n"
+        + "        try:\n"
+        + "          batch.args.extend(args)\n"
+        + "        except Exception:\n"
+        + "          del batch.args[size:]\n"
+        + "        else:\n"
+        + "          batch.ops.append(op)\n"
+        + "          return None\n"
+        + "      batch.direct()\n"
+        + "    return direct(*args)\n"
+        + "  return call\n"
+        + "__pyc_drawing_names__ = frozenset(__import__('" + SketchNamespace.MODULE + "').DRAWING_NAMES)\n"
+        + "__pyc_query_names__ = frozenset(__import__('" + SketchNamespace.MODULE + "').GRAPHICS_NAMES) - __pyc_drawing_names__\n"
+        + "def __pyc_flushing__(direct, draws, reads):\n"
+        + "  batch = __pyc_batch__\n"
+        + "  def call(*args):\n"
+        + "    if draws or (reads and batch.pipeline is not None):\n"
+        + "      batch.direct()\n"
+        + "    elif batch.ops and not batch.recording:\n"
+        + "      batch.flush()\n"
+        + "    return direct(*args)\n"
+        + "  return call\n"
+        + "def __pyc_batch_install__():\n"
+        + "  if __pyc_batch__.installed:\n"
+        + "    return\n"
+        + "  g = globals()\n"
+        + "  module = __import__('" + SketchNamespace.MODULE + "')\n"
+        + "  for name in __pyc_api_names__:\n"
+        + "    if name in __pyc_recorded_ops__:\n"
+        + "      g[name] = __pyc_recorded__(g[name], *__pyc_recorded_ops__[name])\n"
+        + "    elif name in g:\n"
+        + "      g[name] = __pyc_flushing__(g[name], name in __pyc_drawing_names__, name in __pyc_query_names__)\n"
+        + "    else:\n"
+        + "      continue\n"
+        + "    setattr(module, name, g[name])\n"
+        + "  __pyc_batch__.installed = True\n"
+        + "def batchDraw(enabled=True):\n"
+        + "  if __pyc_batch__.pipeline is not None:\n"
+        + "    enabled = True\n"
+        + "  if enabled:\n"
+        + "    __pyc_batch_install__()\n"
+        + "  else:\n"
+        + "    __pyc_batch__.flush()\n"
+        + "  __pyc_batch__.enabled = enabled\n"
+        + "  managedinterpreter.setDrawBatching(enabled)\n";
+
+}
@@ -0,0 +1,43 @@
+package org.pycessing;
+
+import jep.JepException;
+
+// The outcome of code passed to ManagedInterpreter.submit()
+public class EvalResult {
+
+  private final Object value;
+  private final String output;
+  private final String error;
+  private final JepException exception;
+
+  public EvalResult(Object value, String output, String error, JepException exception) {
+    this.value = value;
+    this.output = output;
+    this.error = error;
+    this.exception = exception;
+  }
+
+  // The value of a single expression, converted by jep. Null for statements.
+  public Object getValue() {
+    return value;
+  }
+
+  public String getOutput() {
+    return output;
+  }
+
+  // Includes the traceback if the code raised
+  public String getError() {
+    return error;
+  }
+
+  // Null unless the code raised
+  public JepException getException() {
+    return exception;
+  }
+
+  public boolean succeeded() {
+    return exception == null;
+  }
+
+}
@@ -0,0 +1,74 @@
+package org.pycessing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A bounded queue for many producer threads and a single consumer, with no
+// locks. Each slot carries a sequence number saying whose turn it is: a
+// producer claims a position by moving the tail with a CAS, writes the slot
+// and then publishes it by advancing the slot's sequence; the consumer only
+// reads a slot once its sequence says it has been published.
+public class EventRing<E> {
+
+  private final Object[] slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  // Only the consumer touches head
+  private long head = 0;
+
+  // capacity is rounded up to a power of two
+  public EventRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    slots = new Object[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    mask = size - 1;
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  // Any thread. Returns false if the ring is full.
+  public boolean offer(E element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots[index] = element;
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  // Consumer thread only. Returns null if nothing has been published yet.
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    int index = (int) head & mask;
+    if (sequences.get(index) != head + 1) {
+      return null;
+    }
+    E element = (E) slots[index];
+    slots[index] = null;
+    sequences.lazySet(index, head + slots.length);
+    head++;
+    return element;
+  }
+
+  public boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+
+}
@@ -0,0 +1,236 @@
+package org.pycessing;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Where each frame's time went. PAppletConnector adds to the phases as they
+// happen and closes the frame at the end of handleDraw; RENDER is whatever part
+// of the frame the other phases don't account for, which is mostly Processing
+// drawing and presenting the frame.
+//
+// Set -Dpycessing.metrics.interval=<seconds> to log a summary at INFO periodically.
+public class FrameMetrics implements FrameMetricsMXBean {
+
+  public enum Phase {
+    SYNC, INTERPRETER, CAPTURE, EVENTS, RENDER
+  }
+
+  public static final String INTERVAL_PROPERTY = "pycessing.metrics.interval";
+
+  private static final Phase[] PHASES = Phase.values();
+  private static final double NANOS_PER_MILLI = 1000000.0;
+
+  private final PhaseHistogram frameTimes = new PhaseHistogram();
+  private final PhaseHistogram[] phaseTimes = new PhaseHistogram[PHASES.length];
+  private final long[] current = new long[PHASES.length];
+  private volatile long droppedFrames = 0;
+  private volatile float targetFrameRate = 60;
+  // reset() runs on a JMX thread, but the histograms only take one writer, so
+  // the animation thread clears them at the start of its next frame
+  private volatile boolean resetRequested = false;
+  private long frameStart = 0;
+  private long lastFrameStart = 0;
+
+  private ObjectName name;
+  private ScheduledExecutorService dumper;
+
+  public FrameMetrics() {
+    for (int i = 0; i < PHASES.length; i++) {
+      phaseTimes[i] = new PhaseHistogram();
+    }
+  }
+
+  public void setTargetFrameRate(float fps) {
+    targetFrameRate = fps;
+  }
+
+  public void beginFrame(long now) {
+    if (resetRequested) {
+      resetRequested = false;
+      clear();
+    }
+    if (lastFrameStart != 0 && targetFrameRate > 0) {
+      // Frames that should have started between this one and the last
+      double period = 1000000000.0 / targetFrameRate;
+      long missed = Math.round((now - lastFrameStart) / period) - 1;
+      if (missed > 0) {
+        droppedFrames += missed;
+      }
+    }
+    lastFrameStart = now;
+    frameStart = now;
+    for (int i = 0; i < current.length; i++) {
+      current[i] = 0;
+    }
+  }
+
+  // A pass through handleDraw that draws nothing. It isn't a frame, and the
+  // time until the next one drawn isn't frames dropped.
+  public void skipFrame() {
+    lastFrameStart = 0;
+    frameStart = 0;
+  }
+
+  public void add(Phase phase, long nanos) {
+    current[phase.ordinal()] += nanos;
+  }
+
+  public void endFrame(long now) {
+    if (frameStart == 0) {
+      return;
+    }
+    long total = now - frameStart;
+    long accounted = 0;
+    for (Phase phase : PHASES) {
+      if (phase != Phase.RENDER) {
+        accounted += current[phase.ordinal()];
+        phaseTimes[phase.ordinal()].record(current[phase.ordinal()]);
+      }
+    }
+    phaseTimes[Phase.RENDER.ordinal()].record(Math.max(0, total - accounted));
+    frameTimes.record(total);
+    frameStart = 0;
+  }
+
+  public PhaseHistogram getFrameTimes() {
+    return frameTimes;
+  }
+
+  public PhaseHistogram getPhaseTimes(Phase phase) {
+    return phaseTimes[phase.ordinal()];
+  }
+
+  @Override
+  public long getFrameCount() {
+    return frameTimes.getCount();
+  }
+
+  @Override
+  public long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  @Override
+  public float getTargetFrameRate() {
+    return targetFrameRate;
+  }
+
+  @Override
+  public double getFrameTimeMean() {
+    return frameTimes.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getFrameTimeP50() {
+    return frameTimes.getPercentile(50) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getFrameTimeP95() {
+    return frameTimes.getPercentile(95) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getFrameTimeP99() {
+    return frameTimes.getPercentile(99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getFrameTimeMax() {
+    return frameTimes.getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public Map<String, Double> getPhaseMeans() {
+    Map<String, Double> means = new LinkedHashMap<String, Double>();
+    for (Phase phase : PHASES) {
+      means.put(phase.name(), getPhaseTimes(phase).getMean() / NANOS_PER_MILLI);
+    }
+    return means;
+  }
+
+  @Override
+  public Map<String, Double> getPhaseP99s() {
+    Map<String, Double> p99s = new LinkedHashMap<String, Double>();
+    for (Phase phase : PHASES) {
+      p99s.put(phase.name(), getPhaseTimes(phase).getPercentile(99) / NANOS_PER_MILLI);
+    }
+    return p99s;
+  }
+
+  @Override
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    summary.append(String.format("frames=%d dropped=%d frame ms mean=%.2f p50=%.2f p95=%.2f p99=%.2f max=%.2f",
+        getFrameCount(), getDroppedFrames(), getFrameTimeMean(), getFrameTimeP50(),
+        getFrameTimeP95(), getFrameTimeP99(), getFrameTimeMax()));
+    for (Phase phase : PHASES) {
+      PhaseHistogram h = getPhaseTimes(phase);
+      summary.append(String.format(" | %s mean=%.2f p99=%.2f", phase.name().toLowerCase(),
+          h.getMean() / NANOS_PER_MILLI, h.getPercentile(99) / NANOS_PER_MILLI));
+    }
+    return summary.toString();
+  }
+
+  @Override
+  public void reset() {
+    resetRequested = true;
+  }
+
+  private void clear() {
+    frameTimes.reset();
+    for (PhaseHistogram h : phaseTimes) {
+      h.reset();
+    }
+    droppedFrames = 0;
+    lastFrameStart = 0;
+  }
+
+  // Registers the MXBean and starts the periodic summary if it was asked for
+  public synchronized void start(String id) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      name = new ObjectName("org.pycessing:type=FrameMetrics,name=" + ObjectName.quote(id));
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      Log.warn("FrameMetrics: could not register MXBean: {}", e);
+      name = null;
+    }
+
+    long interval = Long.getLong(INTERVAL_PROPERTY, 0);
+    if (interval > 0 && dumper == null) {
+      dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Pycessing frame metrics");
+        t.setDaemon(true);
+        return t;
+      });
+      dumper.scheduleAtFixedRate(() -> Log.info("FrameMetrics {}", getSummary()), interval, interval, TimeUnit.SECONDS);
+    }
+  }
+
+  public synchronized void stop() {
+    if (dumper != null) {
+      dumper.shutdownNow();
+      dumper = null;
+    }
+    if (name != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      } catch (JMException e) {
+        Log.warn("FrameMetrics: could not unregister MXBean: {}", e);
+      }
+      name = null;
+    }
+  }
+
+}
@@ -0,0 +1,33 @@
+package org.pycessing;
+
+import java.util.Map;
+
+// Registered as org.pycessing:type=FrameMetrics for each running sketch.
+// Times are in milliseconds.
+public interface FrameMetricsMXBean {
+
+  long getFrameCount();
+
+  long getDroppedFrames();
+
+  float getTargetFrameRate();
+
+  double getFrameTimeMean();
+
+  double getFrameTimeP50();
+
+  double getFrameTimeP95();
+
+  double getFrameTimeP99();
+
+  double getFrameTimeMax();
+
+  Map<String, Double> getPhaseMeans();
+
+  Map<String, Double> getPhaseP99s();
+
+  String getSummary();
+
+  void reset();
+
+}
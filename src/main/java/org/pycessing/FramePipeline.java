@@ -0,0 +1,240 @@
+package org.pycessing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jep.JepException;
+import processing.core.PApplet;
+
+// Runs the sketch's Python on its own thread, one frame ahead of the animation
+// thread. While the animation thread replays frame N into the graphics, the
+// Python thread runs draw() for frame N+1 with every recordable call going into
+// the other of two CommandLists. The frame shows one frame later than it would
+// otherwise, and the frame time becomes the longer of the two halves instead of
+// their sum.
+//
+// A call that draws and can't be recorded (text(), image(), pixels, an int
+// color, the array primitives) can't run while the other frame is being drawn.
+// The Python thread waits in beginDirect() until the animation thread has
+// finished the previous frame and is waiting for this one, replays what it has
+// recorded so far and runs the rest of the frame straight into the graphics.
+// Such a frame costs as much as it would without the pipeline; frames that only
+// make recorded calls overlap.
+//
+// The interpreter is created by, and only used from, the Python thread, so
+// everything else that touches it goes through call().
+public class FramePipeline {
+
+  public interface PythonTask<T> {
+    T run() throws JepException;
+  }
+
+  // A frame's recorded draw calls, in the layout DrawCommandBuffer replays
+  public static final class CommandList {
+    private byte[] ops = new byte[4096];
+    private byte[] args = new byte[16384];
+    private int opsLength = 0;
+    private int argsLength = 0;
+
+    void add(byte[] moreOps, byte[] moreArgs) {
+      ops = append(ops, opsLength, moreOps);
+      opsLength += moreOps.length;
+      args = append(args, argsLength, moreArgs);
+      argsLength += moreArgs.length;
+    }
+
+    private static byte[] append(byte[] to, int length, byte[] more) {
+      if (length + more.length > to.length) {
+        to = Arrays.copyOf(to, Math.max(to.length * 2, length + more.length));
+      }
+      System.arraycopy(more, 0, to, length, more.length);
+      return to;
+    }
+
+    public void replay(PApplet applet) {
+      if (opsLength > 0) {
+        DrawCommandBuffer.replay(applet,
+            ByteBuffer.wrap(ops, 0, opsLength).order(ByteOrder.nativeOrder()).asIntBuffer(),
+            ByteBuffer.wrap(args, 0, argsLength).order(ByteOrder.nativeOrder()).asFloatBuffer());
+      }
+    }
+
+    public void clear() {
+      opsLength = 0;
+      argsLength = 0;
+    }
+
+    public boolean isEmpty() {
+      return opsLength == 0;
+    }
+
+    public int size() {
+      return opsLength / 4;
+    }
+  }
+
+  private final PApplet applet;
+  private final ExecutorService python;
+  private volatile Thread pythonThread;
+
+  private CommandList back = new CommandList();
+  private CommandList front = new CommandList();
+
+  // Animation thread only
+  private Future<?> pending;
+  // Completed once the animation thread is waiting for the pending frame
+  private volatile CompletableFuture<Void> parked = CompletableFuture.completedFuture(null);
+  // Python thread only. True while nothing else is drawing, so calls draw
+  // straight away; otherwise they go into recording.
+  private boolean lockstep = true;
+  private CommandList recording;
+  private volatile boolean closed = false;
+
+  public FramePipeline(PApplet applet) {
+    this.applet = applet;
+    python = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "Pycessing python");
+      t.setDaemon(true);
+      pythonThread = t;
+      return t;
+    });
+  }
+
+  public boolean isPythonThread() {
+    return Thread.currentThread() == pythonThread;
+  }
+
+  // Runs task on the Python thread and waits for it. Anything the frame in
+  // production draws directly can go ahead while the caller waits, and so can
+  // the task.
+  public <T> T call(PythonTask<T> task) throws JepException {
+    if (isPythonThread()) {
+      return task.run();
+    }
+    Future<T> result = python.submit(() -> {
+      lockstep = true;
+      return task.run();
+    });
+    parked.complete(null);
+    try {
+      return get(result);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof JepException) {
+        throw (JepException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  // Animation thread. Starts running frame on the Python thread, recording into
+  // the back list. Only one frame is in production at a time.
+  public void produce(PythonTask<?> frame) {
+    if (pending != null) {
+      throw new IllegalStateException("A frame is already in production");
+    }
+    final CommandList list = back;
+    parked = new CompletableFuture<Void>();
+    pending = python.submit(() -> {
+      list.clear();
+      recording = list;
+      lockstep = false;
+      try {
+        frame.run();
+      } catch (JepException e) {
+        Log.error("FramePipeline: the frame failed", e);
+      } finally {
+        lockstep = true;
+      }
+    });
+  }
+
+  public boolean hasPendingFrame() {
+    return pending != null;
+  }
+
+  // Animation thread. Waits for the frame in production and returns what it
+  // recorded, or null if none was started. The list is valid until the next
+  // call to awaitFrame().
+  public CommandList awaitFrame() {
+    if (pending == null) {
+      return null;
+    }
+    parked.complete(null);
+    try {
+      get(pending);
+    } catch (ExecutionException e) {
+      Log.error("FramePipeline: the frame failed", e.getCause());
+    } finally {
+      pending = null;
+    }
+    CommandList finished = back;
+    back = front;
+    front = finished;
+    return finished;
+  }
+
+  // Python thread. Returns false if the calls should be replayed straight away
+  // instead.
+  public boolean defer(byte[] ops, byte[] args) {
+    if (lockstep || !isPythonThread()) {
+      return false;
+    }
+    recording.add(ops, args);
+    return true;
+  }
+
+  // Python thread, before a call that draws directly. Returns at once when the
+  // frame is already running in lockstep.
+  public void beginDirect() {
+    if (lockstep || !isPythonThread()) {
+      return;
+    }
+    parked.join();
+    if (closed) {
+      throw new IllegalStateException("The sketch has stopped");
+    }
+    recording.replay(applet);
+    recording.clear();
+    lockstep = true;
+  }
+
+  // Lets a frame waiting in beginDirect() fail rather than wait forever and
+  // stops the Python thread once it's done with what it has
+  public void close() {
+    closed = true;
+    parked.complete(null);
+    python.shutdown();
+  }
+
+  private static <T> T get(Future<T> future) throws ExecutionException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          // The Python thread can't be stopped partway, so the wait can't be either
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+}
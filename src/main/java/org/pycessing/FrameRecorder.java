@@ -0,0 +1,181 @@
+package org.pycessing;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+// Writes frames to disk off the animation thread. save() copies the pixels
+// into one of a fixed number of pooled buffers and hands it to a small pool of
+// writer threads, which encode it with PImage.save(), so any format
+// saveFrame() takes works. When every buffer is still waiting to be written
+// save() blocks until one is free, so a disk that falls behind slows the
+// sketch down instead of filling the heap.
+//
+// -Dpycessing.export.threads sets the number of writers (half the cores by
+// default) and -Dpycessing.export.buffers the number of buffers (twice the
+// writers).
+//
+// It's also the switch for recording every frame: PAppletConnector saves each
+// frame it draws to the pattern given to record(), from the command line's
+// --record or from Python's recordFrames().
+public class FrameRecorder {
+
+  public static final String THREADS_PROPERTY = "pycessing.export.threads";
+  public static final String BUFFERS_PROPERTY = "pycessing.export.buffers";
+
+  private static final AtomicInteger recorders = new AtomicInteger();
+
+  private final ExecutorService writers;
+  private final int buffers;
+  private final Semaphore free;
+  private final ConcurrentLinkedQueue<int[]> pool = new ConcurrentLinkedQueue<int[]>();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong stalls = new AtomicLong();
+  private volatile String pattern;
+
+  public FrameRecorder() {
+    this(Integer.getInteger(THREADS_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+  }
+
+  public FrameRecorder(int threads) {
+    this(threads, Integer.getInteger(BUFFERS_PROPERTY, threads * 2));
+  }
+
+  public FrameRecorder(int threads, int buffers) {
+    this.buffers = Math.max(1, buffers);
+    free = new Semaphore(this.buffers);
+    final int id = recorders.incrementAndGet();
+    // Threads are only started once there is something to write
+    writers = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Pycessing frame writer " + id + "-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  // Record every frame to pattern, with #### replaced by the frame number as
+  // saveFrame() does. null stops recording.
+  public void record(String pattern) {
+    this.pattern = pattern;
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  public boolean isRecording() {
+    return pattern != null;
+  }
+
+  // PApplet.insertFrame() for any frame number: a run of two or more #s is
+  // replaced by the number, padded to as many digits
+  public static String insertFrame(String pattern, int frame) {
+    int first = pattern.indexOf('#');
+    int last = pattern.lastIndexOf('#');
+    if (first == -1 || last == first) {
+      return pattern;
+    }
+    return pattern.substring(0, first) + PApplet.nf(frame, last - first + 1) + pattern.substring(last + 1);
+  }
+
+  // Writes the first width * height pixels to file, an absolute path, in the
+  // background. Blocks while every buffer is in use.
+  public void save(int[] pixels, int width, int height, String file) {
+    if (!free.tryAcquire()) {
+      stalls.incrementAndGet();
+      Log.trace("FrameRecorder: waiting for a free buffer");
+      free.acquireUninterruptibly();
+    }
+    int length = width * height;
+    int[] buffer = pool.poll();
+    if (buffer == null || buffer.length != length) {
+      buffer = new int[length];
+    }
+    System.arraycopy(pixels, 0, buffer, 0, length);
+    final int[] frame = buffer;
+    try {
+      writers.execute(() -> {
+        try {
+          write(frame, width, height, file);
+        } finally {
+          pool.offer(frame);
+          free.release();
+        }
+      });
+    } catch (RuntimeException e) {
+      free.release();
+      throw e;
+    }
+  }
+
+  private void write(int[] pixels, int width, int height, String file) {
+    PImage image = new PImage();
+    image.format = PConstants.RGB;
+    image.width = image.pixelWidth = width;
+    image.height = image.pixelHeight = height;
+    image.pixelDensity = 1;
+    image.pixels = pixels;
+    try {
+      if (image.save(file)) {
+        written.incrementAndGet();
+        return;
+      }
+      Log.error("FrameRecorder: could not write " + file);
+    } catch (RuntimeException e) {
+      Log.error("FrameRecorder: could not write " + file, e);
+    }
+    failed.incrementAndGet();
+  }
+
+  // Blocks until everything saved so far is on disk
+  public void flush() {
+    free.acquireUninterruptibly(buffers);
+    free.release(buffers);
+  }
+
+  // Writes what's left and stops the writers
+  public void close() {
+    pattern = null;
+    flush();
+    writers.shutdown();
+  }
+
+  public long getWritten() {
+    return written.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  // How many times save() had to wait for a buffer
+  public long getStalls() {
+    return stalls.get();
+  }
+
+  static String pythonSource() {
+    return PYTHON_SOURCE;
+  }
+
+  // recordFrames() starts saving every frame and recordFrames(None) stops.
+  // flushFrames() waits for the frames saved so far to be written.
+  private static final String PYTHON_SOURCE = "def recordFrames(pattern='frames/frame-######.png'):\n"
+      + "  __pyc_recorder__.record(pattern)\n"
+      + "def flushFrames():\n"
+      + "  __pyc_recorder__.flush()\n";
+
+}
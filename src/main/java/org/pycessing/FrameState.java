@@ -0,0 +1,136 @@
+package org.pycessing;
+
+import processing.core.PApplet;
+
+public class FrameState {
+
+  // The sketch globals Java owns. They're collected once per frame and only the
+  // ones that changed since the last sync are handed to Python, in one call.
+  public static final String FRAME_COUNT = "frameCount";
+  public static final String WIDTH = "width";
+  public static final String HEIGHT = "height";
+  public static final String MOUSE_X = "mouseX";
+  public static final String MOUSE_Y = "mouseY";
+  public static final String PMOUSE_X = "pmouseX";
+  public static final String PMOUSE_Y = "pmouseY";
+  public static final String MOUSE_BUTTON = "mouseButton";
+  public static final String MOUSE_PRESSED = "mousePressed";
+  public static final String KEY = "key";
+  public static final String KEY_CODE = "keyCode";
+  public static final String KEY_PRESSED = "keyPressed";
+  public static final String FOCUSED = "focused";
+
+  public static final String[] NAMES = {
+      FRAME_COUNT, WIDTH, HEIGHT,
+      MOUSE_X, MOUSE_Y, PMOUSE_X, PMOUSE_Y, MOUSE_BUTTON, MOUSE_PRESSED,
+      KEY, KEY_CODE, KEY_PRESSED, FOCUSED };
+
+  private static final int SLOTS = NAMES.length;
+
+  private final long[] current = new long[SLOTS];
+  private final long[] sent = new long[SLOTS];
+  private final boolean[] valid = new boolean[SLOTS];
+  private final boolean[] shadowed = new boolean[SLOTS];
+
+  private final int[] dirtySlots = new int[SLOTS];
+  private final String[] dirtyNames = new String[SLOTS];
+  private final Object[] dirtyValues = new Object[SLOTS];
+  private int dirtyCount = 0;
+
+  // Returns the number of values that changed since the last call to markSynced()
+  public int update(PApplet applet) {
+    return update(applet, applet.frameCount);
+  }
+
+  // For a frame other than the applet's current one, as FramePipeline runs
+  // draw() a frame ahead
+  public int update(PApplet applet, int frameCount) {
+    current[0] = frameCount;
+    current[1] = applet.width;
+    current[2] = applet.height;
+    current[3] = applet.mouseX;
+    current[4] = applet.mouseY;
+    current[5] = applet.pmouseX;
+    current[6] = applet.pmouseY;
+    current[7] = applet.mouseButton;
+    current[8] = applet.mousePressed ? 1 : 0;
+    current[9] = applet.key;
+    current[10] = applet.keyCode;
+    current[11] = applet.keyPressed ? 1 : 0;
+    current[12] = applet.focused ? 1 : 0;
+
+    dirtyCount = 0;
+    for (int i = 0; i < SLOTS; i++) {
+      if (shadowed[i] || (valid[i] && sent[i] == current[i])) {
+        continue;
+      }
+      dirtySlots[dirtyCount] = i;
+      dirtyNames[dirtyCount] = NAMES[i];
+      dirtyValues[dirtyCount] = box(i, current[i]);
+      dirtyCount++;
+    }
+    return dirtyCount;
+  }
+
+  private static Object box(int slot, long value) {
+    switch (slot) {
+      case 8:
+      case 11:
+      case 12:
+        return value != 0 ? Boolean.TRUE : Boolean.FALSE;
+      case 9:
+        return Character.valueOf((char) value);
+      default:
+        return Integer.valueOf((int) value);
+    }
+  }
+
+  public void markSynced() {
+    for (int i = 0; i < dirtyCount; i++) {
+      int slot = dirtySlots[i];
+      sent[slot] = current[slot];
+      valid[slot] = true;
+      dirtyValues[i] = null;
+    }
+    dirtyCount = 0;
+  }
+
+  // Forget what Python has so the next update sends everything
+  public void invalidate() {
+    for (int i = 0; i < SLOTS; i++) {
+      valid[i] = false;
+    }
+  }
+
+  // mousePressed and keyPressed double as handler names. When the sketch defines
+  // the handler the variable must not overwrite it.
+  public void setShadowed(String name, boolean shadow) {
+    int slot = slotOf(name);
+    if (shadowed[slot] != shadow) {
+      shadowed[slot] = shadow;
+      valid[slot] = false;
+    }
+  }
+
+  public String[] getDirtyNames() {
+    return dirtyNames;
+  }
+
+  public Object[] getDirtyValues() {
+    return dirtyValues;
+  }
+
+  public int getDirtyCount() {
+    return dirtyCount;
+  }
+
+  private static int slotOf(String name) {
+    for (int i = 0; i < SLOTS; i++) {
+      if (NAMES[i].equals(name)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(name + " is not part of the frame state");
+  }
+
+}
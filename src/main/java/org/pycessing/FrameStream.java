@@ -0,0 +1,26 @@
+package org.pycessing;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+// Where PAppletConnector sends every frame it draws, unencoded, for another
+// process to pick up. Pixels are written as 4 bytes each in B, G, R, A order
+// (Processing's ARGB ints, little-endian), row by row from the top left. The
+// alpha of the sketch surface isn't meaningful and should be ignored.
+// write() is called on the animation thread.
+public interface FrameStream {
+
+  // frame is the frame's number, as saveFrame() in its draw() would see it
+  public void write(int[] pixels, int width, int height, int frame) throws IOException;
+
+  public void close() throws IOException;
+
+  // "-" streams to standard output, anything else is the path of a ring file
+  public static FrameStream open(String target) throws IOException {
+    if (target.equals("-")) {
+      return PipeFrameStream.toStdout();
+    }
+    return new MappedFrameRing(Paths.get(target));
+  }
+
+}
@@ -0,0 +1,139 @@
+package org.pycessing;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import processing.event.Event;
+import processing.event.MouseEvent;
+
+// Mouse and key events on their way from the windowing thread to the sketch.
+// Events are posted into an EventRing from whatever thread the surface uses
+// and drained once per frame on the animation thread, where the Python
+// handlers run. While draining, runs of the same kind of motion event are
+// merged into the last one, so a fast mouse costs one mouseMoved() call per
+// frame instead of one per AWT event.
+//
+// -Dpycessing.events.coalesce lists what is merged: any of move, drag and
+// wheel (wheel events add up their counts), or none. The default is
+// move,drag. -Dpycessing.events.capacity sets the ring's size (1024 by
+// default); events posted while it's full are dropped and counted.
+public class InputEvents {
+
+  public enum Merge {
+    MOVE, DRAG, WHEEL
+  }
+
+  public static final String COALESCE_PROPERTY = "pycessing.events.coalesce";
+  public static final String CAPACITY_PROPERTY = "pycessing.events.capacity";
+
+  private final EventRing<Event> ring;
+  private volatile EnumSet<Merge> merge;
+  private final AtomicLong dropped = new AtomicLong();
+  private long merged = 0;
+
+  public InputEvents() {
+    this(Integer.getInteger(CAPACITY_PROPERTY, 1024),
+        parseMerge(System.getProperty(COALESCE_PROPERTY, "move,drag")));
+  }
+
+  public InputEvents(int capacity, Set<Merge> merge) {
+    ring = new EventRing<Event>(capacity);
+    setMerge(merge);
+  }
+
+  static EnumSet<Merge> parseMerge(String spec) {
+    EnumSet<Merge> merge = EnumSet.noneOf(Merge.class);
+    for (String name : spec.split(",")) {
+      name = name.trim().toUpperCase(Locale.ROOT);
+      if (name.isEmpty() || name.equals("NONE")) {
+        continue;
+      }
+      try {
+        merge.add(Merge.valueOf(name));
+      } catch (IllegalArgumentException e) {
+        Log.warn("InputEvents: unknown {} value: {}", COALESCE_PROPERTY, name);
+      }
+    }
+    return merge;
+  }
+
+  public void setMerge(Set<Merge> merge) {
+    EnumSet<Merge> copy = EnumSet.noneOf(Merge.class);
+    copy.addAll(merge);
+    this.merge = copy;
+  }
+
+  public Set<Merge> getMerge() {
+    return merge.clone();
+  }
+
+  // Any thread
+  public boolean post(Event event) {
+    if (ring.offer(event)) {
+      return true;
+    }
+    dropped.incrementAndGet();
+    return false;
+  }
+
+  public boolean isEmpty() {
+    return ring.isEmpty();
+  }
+
+  // Animation thread. Adds what has been posted, in order and with motion
+  // merged, to events. Returns how many were added.
+  public int drain(List<Event> events) {
+    Set<Merge> merge = this.merge;
+    int start = events.size();
+    Event event;
+    while ((event = ring.poll()) != null) {
+      int last = events.size() - 1;
+      if (last >= start) {
+        Event merged = merge(merge, events.get(last), event);
+        if (merged != null) {
+          events.set(last, merged);
+          this.merged++;
+          continue;
+        }
+      }
+      events.add(event);
+    }
+    return events.size() - start;
+  }
+
+  private static Event merge(Set<Merge> merge, Event previous, Event next) {
+    if (!(previous instanceof MouseEvent) || !(next instanceof MouseEvent)
+        || previous.getAction() != next.getAction() || previous.getModifiers() != next.getModifiers()) {
+      return null;
+    }
+    switch (next.getAction()) {
+      case MouseEvent.MOVE:
+        return merge.contains(Merge.MOVE) ? next : null;
+      case MouseEvent.DRAG:
+        return merge.contains(Merge.DRAG) && ((MouseEvent) previous).getButton() == ((MouseEvent) next).getButton()
+            ? next : null;
+      case MouseEvent.WHEEL:
+        if (!merge.contains(Merge.WHEEL)) {
+          return null;
+        }
+        MouseEvent m = (MouseEvent) next;
+        return new MouseEvent(m.getNative(), m.getMillis(), m.getAction(), m.getModifiers(), m.getX(), m.getY(),
+            m.getButton(), ((MouseEvent) previous).getCount() + m.getCount());
+      default:
+        return null;
+    }
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  // Animation thread
+  public long getMerged() {
+    return merged;
+  }
+
+}
@@ -0,0 +1,180 @@
+package org.pycessing;
+
+import java.util.function.Supplier;
+
+public class Log {
+
+  public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+  private static volatile Level level = parseLevel(System.getProperty("pycessing.log.level"), Level.WARN);
+  private static final AsyncLogAppender appender = new AsyncLogAppender();
+
+  public static Level parseLevel(String name, Level fallback) {
+    if (name == null) {
+      return fallback;
+    }
+    try {
+      return Level.valueOf(name.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      return fallback;
+    }
+  }
+
+  public static void setLevel(Level l) {
+    level = l;
+  }
+
+  // -v lowers the threshold to DEBUG. TRACE (per frame and per call messages)
+  // has to be asked for explicitly.
+  public static Level getLevel() {
+    Level l = level;
+    if (Pycessing.VERBOSE && l.compareTo(Level.DEBUG) > 0) {
+      return Level.DEBUG;
+    }
+    return l;
+  }
+
+  public static boolean isEnabled(Level l) {
+    return l != Level.OFF && l.compareTo(getLevel()) >= 0;
+  }
+
+  public static boolean isTraceEnabled() {
+    return isEnabled(Level.TRACE);
+  }
+
+  public static boolean isDebugEnabled() {
+    return isEnabled(Level.DEBUG);
+  }
+
+  // Every method checks the level before building anything, so a disabled
+  // message costs a field read. Pass arguments instead of concatenating them,
+  // and use a Supplier when an argument itself is expensive to produce.
+
+  public static void trace(String msg) {
+    log(Level.TRACE, msg);
+  }
+
+  public static void trace(String format, Object arg) {
+    log(Level.TRACE, format, arg);
+  }
+
+  public static void trace(String format, Object arg1, Object arg2) {
+    log(Level.TRACE, format, arg1, arg2);
+  }
+
+  public static void trace(String format, Object... args) {
+    log(Level.TRACE, format, args);
+  }
+
+  public static void trace(Supplier<String> msg) {
+    log(Level.TRACE, msg);
+  }
+
+  public static void debug(String msg) {
+    log(Level.DEBUG, msg);
+  }
+
+  public static void debug(String format, Object arg) {
+    log(Level.DEBUG, format, arg);
+  }
+
+  public static void debug(String format, Object arg1, Object arg2) {
+    log(Level.DEBUG, format, arg1, arg2);
+  }
+
+  public static void debug(String format, Object... args) {
+    log(Level.DEBUG, format, args);
+  }
+
+  public static void debug(Supplier<String> msg) {
+    log(Level.DEBUG, msg);
+  }
+
+  public static void info(String msg) {
+    log(Level.INFO, msg);
+  }
+
+  public static void info(String format, Object arg) {
+    log(Level.INFO, format, arg);
+  }
+
+  public static void info(String format, Object... args) {
+    log(Level.INFO, format, args);
+  }
+
+  public static void warn(String msg) {
+    log(Level.WARN, msg);
+  }
+
+  public static void warn(String format, Object arg) {
+    log(Level.WARN, format, arg);
+  }
+
+  public static void warn(String format, Object... args) {
+    log(Level.WARN, format, args);
+  }
+
+  public static void error(String msg) {
+    log(Level.ERROR, msg);
+  }
+
+  public static void error(String msg, Throwable t) {
+    if (isEnabled(Level.ERROR)) {
+      appender.append(Level.ERROR, msg, t);
+    }
+  }
+
+  public static void log(Level l, String msg) {
+    if (isEnabled(l)) {
+      appender.append(l, msg, null);
+    }
+  }
+
+  public static void log(Level l, String format, Object arg) {
+    if (isEnabled(l)) {
+      appender.append(l, format(format, arg), null);
+    }
+  }
+
+  public static void log(Level l, String format, Object arg1, Object arg2) {
+    if (isEnabled(l)) {
+      appender.append(l, format(format, arg1, arg2), null);
+    }
+  }
+
+  public static void log(Level l, String format, Object... args) {
+    if (isEnabled(l)) {
+      appender.append(l, format(format, args), null);
+    }
+  }
+
+  public static void log(Level l, Supplier<String> msg) {
+    if (isEnabled(l)) {
+      appender.append(l, msg.get(), null);
+    }
+  }
+
+  // Blocks until everything logged so far has been written
+  public static void flush() {
+    appender.flush();
+  }
+
+  // Replaces each {} in format with the next argument
+  static String format(String format, Object... args) {
+    StringBuilder sb = new StringBuilder(format.length() + 16 * args.length);
+    int arg = 0;
+    int i = 0;
+    while (i < format.length()) {
+      int next = format.indexOf("{}", i);
+      if (next < 0 || arg >= args.length) {
+        sb.append(format, i, format.length());
+        break;
+      }
+      sb.append(format, i, next);
+      sb.append(args[arg++]);
+      i = next + 2;
+    }
+    return sb.toString();
+  }
+
+}
@@ -2,28 +2,102 @@ package org.pycessing;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import jep.JepConfig;
 import jep.JepException;
 import jep.SharedInterpreter;
 import jep.SubInterpreter;
-import processing.core.PApplet;
-import processing.core.PConstants;
+import jep.python.PyCallable;
 
 public class ManagedInterpreter extends SubInterpreter {
   
-  // There can be only one!
-  private String capturedOutput = "";
-  private String capturedError = "";
-  private final Object waitLock = new Object();
+  // Functions a sketch may define that PAppletConnector calls into
+  public static final String SETTINGS = "settings";
+  public static final String SETUP = "setup";
+  public static final String DRAW = "draw";
+  public static final String MOUSE_PRESSED = "mousePressed";
+  public static final String MOUSE_RELEASED = "mouseReleased";
+  public static final String MOUSE_CLICKED = "mouseClicked";
+  public static final String MOUSE_DRAGGED = "mouseDragged";
+  public static final String MOUSE_MOVED = "mouseMoved";
+  public static final String MOUSE_ENTERED = "mouseEntered";
+  public static final String MOUSE_EXITED = "mouseExited";
+  public static final String MOUSE_WHEEL = "mouseWheel";
+  public static final String KEY_PRESSED = "keyPressed";
+  public static final String KEY_RELEASED = "keyReleased";
+  public static final String KEY_TYPED = "keyTyped";
   
-  private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+  public static final Set<String> SKETCH_FUNCTIONS = new HashSet<String>(Arrays.asList(
+      SETTINGS, SETUP, DRAW,
+      MOUSE_PRESSED, MOUSE_RELEASED, MOUSE_CLICKED, MOUSE_DRAGGED, MOUSE_MOVED,
+      MOUSE_ENTERED, MOUSE_EXITED, MOUSE_WHEEL,
+      KEY_PRESSED, KEY_RELEASED, KEY_TYPED));
+  
+  private static final Object[] NO_ARGS = new Object[0];
+  
+  // CPython extension modules that can't be initialized once per sub-interpreter.
+  // jep imports them in the main interpreter and shares them instead, so
+  // loadPixelArray() and the batch primitives work in every sketch, not only the first.
+  static final String[] SHARED_MODULES = { "numpy" };
+  
+  static JepConfig config() {
+    return new JepConfig().addSharedModules(SHARED_MODULES);
+  }
+  
+  // Each interpreter has its own streams, so sketches running side by side
+  // (see SketchRunner) don't share output
+  private final PythonStream stdout = new PythonStream(new TeeSink(new PassthroughSink(false), new RingBufferSink()));
+  private final PythonStream stderr = new PythonStream(new TeeSink(new PassthroughSink(true), new RingBufferSink()));
+  
+  // Code submitted from other threads. Any number of threads add to the queue
+  // without locking; only the interpreter's thread drains it, in
+  // processSubmissions(), between frames.
+  public static final String REPL_BUDGET_PROPERTY = "pycessing.repl.budget";
+  private static final int SUBMISSION_OUTPUT_CAPACITY = 16 * 1024;
+  private final ConcurrentLinkedQueue<PendingEval> submissions = new ConcurrentLinkedQueue<PendingEval>();
+  // Set before the queue is drained for the last time, so nothing submitted
+  // later waits on an interpreter that will never run it
+  private volatile boolean closed = false;
+  private long replBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(REPL_BUDGET_PROPERTY, 4));
+  private PyCallable submissionRunner;
+  private PyCallable cachedScriptRunner;
+  private PyCallable scriptReloader;
+  
+  private static final class PendingEval {
+    final String code;
+    final boolean interactive;
+    final CompletableFuture<EvalResult> future = new CompletableFuture<EvalResult>();
+    
+    PendingEval(String code, boolean interactive) {
+      this.code = code;
+      this.interactive = interactive;
+    }
+  }
+  
+  // Sketch functions resolved once and called directly. Anything that runs source
+  // code (exec, eval, runScript) may rebind them, so it marks the cache stale.
+  private final HashMap<String, PyCallable> sketchFunctions = new HashMap<String, PyCallable>();
+  private boolean sketchFunctionsStale = true;
+  
+  private PyCallable frameStateSync;
+  
+  // Set from Python by batchDraw(); see DrawCommandBuffer
+  private boolean drawBatching = false;
+  private PyCallable drawBatchFlush;
+  private RetainedCache retainedCache;
   
   public ManagedInterpreter(PAppletConnector p) throws JepException {
-    super();
+    super(config());
     captureOutput();
     initializeInterpreter();
     setPAppletMain(p);
@@ -31,200 +105,402 @@ public class ManagedInterpreter extends SubInterpreter {
   
   private void captureOutput() throws JepException {
     super.exec("import sys\n");
-    super.exec("from io import StringIO\n");
-    super.set("__captured_output__", (Object) capturedOutput);
-    super.set("__captured_error__", (Object) capturedError);
-    String outputCapture = 
-        "class SplitIO(StringIO):\n" + 
-        "   def __init__(self, otherOut):\n" + 
-        "     self.otherOut = otherOut\n" +
-        "     StringIO.__init__(self)\n" + 
-        "   def  write(self, string):\n" + 
-        "     self.otherOut.write(string)\n" + 
-        "     StringIO.write(self, string)\n" + 
-        "   def flush(self):\n" + 
-        "     sys.__stdout__.flush()\n" + 
-        "     StringIO.flush(self)\n" +
-        "   def getvalue(self):\n" +
-        "     value = StringIO.getvalue(self)\n" +
-        "     StringIO.truncate(self, 0)\n" +
-        "     StringIO.seek(self, 0)\n" +
-        "     return value\n" +
-        "__jepout__ = SplitIO(sys.stdout)\n" +
-        "__jeperr__ = SplitIO(sys.stderr)\n" +
-        "sys.stdout = __jepout__\n" +
-        "sys.stderr = __jeperr__\n";
-    
-    super.exec(outputCapture);
+    super.set("__pycessing_stdout__", stdout);
+    super.set("__pycessing_stderr__", stderr);
+    super.exec("sys.stdout = __pycessing_stdout__\n"
+        + "sys.stderr = __pycessing_stderr__\n");
+  }
+  
+  // By default output is passed through to System.out/System.err and kept in a
+  // bounded buffer for getCapturedOutput()/getCapturedError(). Those read from
+  // whichever RingBufferSink the current sink is or contains.
+  public void setOutputSink(OutputSink sink) {
+    stdout.setSink(sink);
+  }
+  
+  public void setErrorSink(OutputSink sink) {
+    stderr.setSink(sink);
+  }
+  
+  public OutputSink getOutputSink() {
+    return stdout.getSink();
+  }
+  
+  public OutputSink getErrorSink() {
+    return stderr.getSink();
   }
   
   public String getCapturedOutput() {
-    String rv = capturedOutput;
-    capturedOutput = "";
-    return rv;
+    RingBufferSink capture = findCapture(stdout.getSink());
+    return capture == null ? "" : capture.drain();
   }
   
   public String getCapturedError() {
-    String rv = capturedError;
-    capturedError = "";
-    return rv;
+    RingBufferSink capture = findCapture(stderr.getSink());
+    return capture == null ? "" : capture.drain();
   }
   
-  private void moveOutputToString() throws JepException {
-    try {
-      capturedOutput += getValue("__jepout__.getvalue()", String.class);
-    } catch (JepException e) {
-      if (! e.getLocalizedMessage().contains("'__jepout__' is not defined")) {
-        throw e;
-      }
+  private static RingBufferSink findCapture(OutputSink sink) {
+    if (sink instanceof RingBufferSink) {
+      return (RingBufferSink) sink;
     }
-  }
-  
-  public void moveErrorToString() throws JepException {
-    try {
-      capturedError += getValue("__jeperr__.getvalue()", String.class);
-    } catch (JepException e) {
-      if (! e.getLocalizedMessage().contains("'__jeperr__' is not defined")) {
-        throw e;
+    if (sink instanceof TeeSink) {
+      for (OutputSink s : ((TeeSink) sink).getSinks()) {
+        RingBufferSink capture = findCapture(s);
+        if (capture != null) {
+          return capture;
+        }
       }
     }
+    return null;
   }
   
   @Override
   public boolean eval(String e) throws JepException {
-    boolean rv = super.eval(e);
-    moveOutputToString();
-    moveErrorToString();
-    return rv;
+    sketchFunctionsStale = true;
+    return super.eval(e);
   }
   
   @Override
   public void exec(String e) throws JepException {
+    sketchFunctionsStale = true;
     super.exec(e);
-    moveOutputToString();
-    moveErrorToString();
   }
   
   public void runScript(String path) throws JepException {
-    super.runScript(path);
-    moveOutputToString();
-    moveErrorToString();
+    sketchFunctionsStale = true;
+    Path cache = BytecodeCache.getDirectory();
+    if (cache == null) {
+      super.runScript(path);
+      return;
+    }
+    cachedScriptRunner.call(path, cache.toAbsolutePath().toString());
   }
   
-  public void close() throws JepException {
-    synchronized (waitLock) {
-      waitLock.notifyAll();
+  // Runs the script again without touching the window or the Processing
+  // bindings. Returns false if it didn't compile, and nothing was changed, or
+  // raised while running, and the sketch functions were put back as they were.
+  public boolean reloadScript(String path) throws JepException {
+    sketchFunctionsStale = true;
+    // Recordings are keyed by function name, which the new source may reuse
+    if (retainedCache != null) {
+      retainedCache.clear();
+    }
+    Path cache = BytecodeCache.getDirectory();
+    Object reloaded = scriptReloader.call(path, cache == null ? null : cache.toAbsolutePath().toString(),
+        SKETCH_FUNCTIONS.toArray(new String[0]));
+    return Boolean.TRUE.equals(reloaded);
+  }
+  
+  public PyCallable getSketchFunction(String name) throws JepException {
+    if (sketchFunctionsStale) {
+      resolveSketchFunctions();
+    }
+    return sketchFunctions.get(name);
+  }
+  
+  public boolean hasSketchFunction(String name) throws JepException {
+    return getSketchFunction(name) != null;
+  }
+  
+  public boolean callSketchFunction(String name) throws JepException {
+    return callSketchFunction(name, NO_ARGS);
+  }
+  
+  public boolean callSketchFunction(String name, Object... args) throws JepException {
+    PyCallable function = getSketchFunction(name);
+    if (function == null) {
+      return false;
+    }
+    try {
+      function.call(args);
+    } finally {
+      if (drawBatching) {
+        drawBatchFlush.call();
+      }
+    }
+    return true;
+  }
+  
+  public void setDrawBatching(boolean enabled) {
+    drawBatching = enabled;
+  }
+  
+  public boolean isDrawBatching() {
+    return drawBatching;
+  }
+  
+  // Records draw calls for the pipeline's frame in production, and makes calls
+  // that can't be recorded wait for the animation thread first. Recording stays
+  // on for good.
+  public void setPipeline(FramePipeline pipeline) throws JepException {
+    super.set("__pyc_pipeline__", pipeline);
+    super.exec("__pyc_batch__.pipeline = __pyc_pipeline__\n"
+        + "batchDraw(True)\n");
+  }
+
+  public RetainedCache getRetainedCache() {
+    return retainedCache;
+  }
+  
+  private void resolveSketchFunctions() throws JepException {
+    for (PyCallable function : sketchFunctions.values()) {
+      function.close();
+    }
+    sketchFunctions.clear();
+    
+    StringBuilder names = new StringBuilder("(");
+    for (String name : SKETCH_FUNCTIONS) {
+      names.append('\'').append(name).append("',");
     }
+    names.append(')');
+    
+    @SuppressWarnings("unchecked")
+    List<String> defined = super.getValue("[n for n in " + names + " if callable(globals().get(n))]", List.class);
+    for (String name : defined) {
+      sketchFunctions.put(name, super.getValue(name, PyCallable.class));
+    }
+    sketchFunctionsStale = false;
+    Log.debug("ManagedInterpreter.resolveSketchFunctions resolved {}", sketchFunctions.keySet());
+  }
+  
+  public void close() throws JepException {
+    sketchFunctions.clear();
+    drawBatching = false;
+    closed = true;
+    failSubmissions();
     super.close();
+    stdout.getSink().close();
+    stderr.getSink().close();
   }
 
   private void initializeInterpreter() throws JepException {
     super.set("interpreter", this);
     super.set("managedinterpreter", this);
+    // Receives the values FrameState found changed, so a whole frame's worth of
+    // globals is one call instead of an eval or set per variable
+    super.exec("def __pycessing_sync__(names, values, count):\n"
+        + "  g = globals()\n"
+        + "  for i in range(count):\n"
+        + "    g[names[i]] = values[i]\n");
+    frameStateSync = super.getValue("__pycessing_sync__", PyCallable.class);
+    // Runs submitted code. A lone expression's value is returned, or for
+    // interactive input echoed the way the Python prompt does. Values jep can't
+    // hand to another thread come back as their repr(). On an exception the
+    // traceback is printed to stderr before it's raised into Java. The sketch's
+    // globals bind exec to PApplet.exec, so the builtin is called by its module.
+    super.exec("def __pycessing_submit__(source, interactive):\n"
+        + "  import builtins, sys, traceback\n"
+        + "  try:\n"
+        + "    if interactive:\n"
+        + "      try:\n"
+        + "        code = compile(source, '<stdin>', 'single')\n"
+        + "      except SyntaxError:\n"
+        + "        code = compile(source, '<stdin>', 'exec')\n"
+        + "      builtins.exec(code, globals())\n"
+        + "      return None\n"
+        + "    try:\n"
+        + "      code = compile(source, '<submit>', 'eval')\n"
+        + "    except SyntaxError:\n"
+        + "      builtins.exec(compile(source, '<submit>', 'exec'), globals())\n"
+        + "      return None\n"
+        + "    value = eval(code, globals())\n"
+        + "    if value is None or isinstance(value, (bool, int, float, str, bytes, list, tuple, dict)) or type(value).__name__.startswith('PyJ'):\n"
+        + "      return value\n"
+        + "    return repr(value)\n"
+        + "  except BaseException:\n"
+        + "    t, v, tb = sys.exc_info()\n"
+        + "    traceback.print_exception(t, v, tb.tb_next)\n"
+        + "    raise\n");
+    submissionRunner = super.getValue("__pycessing_submit__", PyCallable.class);
+    super.exec(BytecodeCache.pythonSource());
+    cachedScriptRunner = super.getValue("__pycessing_run_cached__", PyCallable.class);
+    // Re-runs the sketch into the existing globals. The new source is compiled
+    // before anything changes, so a syntax error leaves the running sketch
+    // alone, and if it raises the old sketch functions are put back. Names
+    // listed in the sketch's __keep__ survive the reload, sketch functions the
+    // new source no longer defines are dropped, and modules from the sketch's
+    // folder are imported afresh.
+    super.exec("def __pycessing_reload__(path, directory, sketch_functions):\n"
+        + "  import builtins, os, sys, traceback\n"
+        + "  try:\n"
+        + "    if directory is None:\n"
+        + "      with open(path, 'rb') as f:\n"
+        + "        code = compile(f.read(), path, 'exec', dont_inherit=True)\n"
+        + "    else:\n"
+        + "      code = __pyc_cached_code__(path, directory)\n"
+        + "  except (SyntaxError, ValueError, OSError):\n"
+        + "    traceback.print_exc()\n"
+        + "    return False\n"
+        + "  g = globals()\n"
+        + "  keep = dict((n, g[n]) for n in g.get('__keep__', ()) if n in g)\n"
+        + "  folder = os.path.dirname(os.path.abspath(path)) + os.sep\n"
+        + "  for name, module in list(sys.modules.items()):\n"
+        + "    if os.path.abspath(getattr(module, '__file__', None) or os.sep).startswith(folder):\n"
+        + "      del sys.modules[name]\n"
+        + "  previous = dict((n, g[n]) for n in sketch_functions if n in g)\n"
+        + "  for name in sketch_functions:\n"
+        + "    g.pop(name, None)\n"
+        + "  try:\n"
+        + "    builtins.exec(code, g)\n"
+        + "  except Exception:\n"
+        + "    traceback.print_exc()\n"
+        + "    for name in sketch_functions:\n"
+        + "      g.pop(name, None)\n"
+        + "    g.update(previous)\n"
+        + "    g.update(keep)\n"
+        + "    return False\n"
+        + "  g.update(keep)\n"
+        + "  return True\n");
+    scriptReloader = super.getValue("__pycessing_reload__", PyCallable.class);
+  }
+  
+  public void syncFrameState(FrameState state) throws JepException {
+    int count = state.getDirtyCount();
+    if (count == 0) {
+      return;
+    }
+    frameStateSync.call(state.getDirtyNames(), state.getDirtyValues(), count);
+    state.markSynced();
   }
   
+  // Blocks until s has run. Kept for callers that don't want the result;
+  // submit() is the non-blocking form.
   public void queueToInterpretAndWait(String s) {
-    synchronized (waitLock) {
-      queue.add(s);
-      try {
-          waitLock.wait();
-      } catch (InterruptedException e) {
-        return;
+    try {
+      EvalResult result = submit(s).get();
+      if (!result.succeeded()) {
+        Log.warn("ManagedInterpreter.queueToInterpretAndWait: {}", result.getException());
       }
+    } catch (InterruptedException e) {
+      // The code still runs; only the wait is abandoned
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      Log.warn("ManagedInterpreter.queueToInterpretAndWait: {}", e.getCause());
     }
   }
   
+  // Runs everything queued, with no time budget
   public void processQueue() throws JepException {
-    synchronized(waitLock) {
-      while (!queue.isEmpty()) {
-        String toEval = queue.poll();
-        exec(toEval);
+    processSubmissions(Long.MAX_VALUE);
+  }
+
+  // Reads code from System.in until end of input. Can run on any thread; the
+  // code itself runs on this interpreter's thread between frames.
+  public void startREPL() {
+    new Repl(this, System.in, System.out, System.err).run();
+  }
+  
+  // Queue code to run on the interpreter's thread. Safe to call from any
+  // thread, and it never blocks. The future completes with the value of the
+  // code if it's a single expression, what it printed, and the Python
+  // exception if it raised. Its output also goes to the interpreter's usual
+  // streams.
+  public CompletableFuture<EvalResult> submit(String code) {
+    return enqueue(code, false);
+  }
+  
+  // Like submit(), for a console: expression values are echoed into the
+  // result's output instead of returned, and the output only goes to the result
+  public CompletableFuture<EvalResult> submitInteractive(String code) {
+    return enqueue(code, true);
+  }
+  
+  private CompletableFuture<EvalResult> enqueue(String code, boolean interactive) {
+    PendingEval pending = new PendingEval(code, interactive);
+    if (closed) {
+      pending.future.completeExceptionally(new IllegalStateException("Interpreter closed"));
+      return pending.future;
+    }
+    submissions.add(pending);
+    // close() may have drained the queue between the check and the add
+    if (closed) {
+      failSubmissions();
+    }
+    return pending.future;
+  }
+  
+  private void failSubmissions() {
+    PendingEval pending;
+    while ((pending = submissions.poll()) != null) {
+      pending.future.completeExceptionally(new IllegalStateException("Interpreter closed"));
+    }
+  }
+  
+  public void setReplBudget(long millis) {
+    replBudgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+  
+  public long getReplBudget() {
+    return TimeUnit.NANOSECONDS.toMillis(replBudgetNanos);
+  }
+  
+  // Runs queued submissions until the budget is used up. At least one runs per
+  // call, so a single slow submission still makes progress. Returns how many ran.
+  public int processSubmissions() {
+    return processSubmissions(replBudgetNanos);
+  }
+  
+  private int processSubmissions(long budgetNanos) {
+    long start = System.nanoTime();
+    int count = 0;
+    PendingEval pending;
+    while ((pending = submissions.poll()) != null) {
+      runSubmission(pending);
+      count++;
+      if (System.nanoTime() - start >= budgetNanos) {
+        break;
       }
-      waitLock.notifyAll();
     }
+    return count;
   }
-
-  public synchronized void startREPL() {
-    // TODO Auto-generated method stub
-    
+  
+  private void runSubmission(PendingEval pending) {
+    OutputSink out = stdout.getSink();
+    OutputSink err = stderr.getSink();
+    RingBufferSink capturedOut = new RingBufferSink(SUBMISSION_OUTPUT_CAPACITY, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    RingBufferSink capturedErr = new RingBufferSink(SUBMISSION_OUTPUT_CAPACITY, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    stdout.setSink(pending.interactive ? capturedOut : new TeeSink(out, capturedOut));
+    stderr.setSink(pending.interactive ? capturedErr : new TeeSink(err, capturedErr));
+    Object value = null;
+    JepException exception = null;
+    try {
+      value = submissionRunner.call(pending.code, pending.interactive);
+    } catch (JepException e) {
+      exception = e;
+    } finally {
+      stdout.setSink(out);
+      stderr.setSink(err);
+      // The code may have defined or replaced draw() and friends
+      sketchFunctionsStale = true;
+    }
+    pending.future.complete(new EvalResult(value, capturedOut.drain(), capturedErr.drain(), exception));
   }
 
+  // Binds the Processing API and PConstants into globals in one call, from the
+  // pycessing module generated at build time. See SketchNamespace.
   private void setPAppletMain(PAppletConnector pAppletConnector) throws JepException {
-    Util.log("ManagedInterpreter.setPAppletMain");
-    Util.log("ManagedInterpreter.setPAppletMain startInterpreter()");
-    super.set("PAppletMain", pAppletConnector);
-    Util.log("ManagedInterpreter.setPAppletMain get methods");
-    Method[] pAppletConnectorMethods = PApplet.class.getDeclaredMethods();
-    for (Method method : pAppletConnectorMethods) {
-      if (Modifier.isPublic(method.getModifiers())) {
-        String name = method.getName();
-        if ((name == "draw") || (name == "setup") ||(name == "settings") || (name == "print")) {
-          continue;
-        }
-        
-        // exit() has meaning in both PApplet and python
-        //if (name == "exit") {
-        //  super.exec("def exit():\n" + 
-        //      "  PAppletMain.dispose()\n\n"
-        //      );
-        //}
-        
-        String pythonEval = name + " = PAppletMain." + name;
-        Util.log("ManagedInterpreter.setPAppletMain pythonEval = '" + pythonEval + "'");
-        super.eval(pythonEval);
-      }
-    }
-    super.eval("frameCount = 0");
-    
-    Field[] pConstants = PConstants.class.getDeclaredFields();
-    for (Field field : pConstants) {
-      if (Modifier.isPublic(field.getModifiers())) {
-        String name = field.getName();
-        switch (name) {
-          case "BACKSPACE": continue;
-          case "TAB": continue;
-          case "ENTER": continue;
-          case "RETURN": continue;
-          case "ESC": continue;
-          case "DELETE": continue;
-        }
-        // There's got to be a better way to do this
-        String typeString = field.getAnnotatedType().getType().getTypeName();
-        String pythonEval = name + " = ";
-        try {
-          switch(typeString) {
-            case "int": pythonEval += field.getInt(field);
-              break;
-            case "char": pythonEval += field.getChar(field);
-              break;
-            case "float": pythonEval += field.getFloat(field);
-              break;
-            case "java.lang.String": pythonEval += "\"\"\"" + (String) field.get(field) + "\"\"\"";
-              break;
-            case "java.lang.String[]": super.set(field.getName(), (String[])field.get(field));
-              pythonEval = "";
-              break;
-          }
-        } catch (IllegalArgumentException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        } catch (IllegalAccessException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        }
-        Util.log("ManagedInterpreter.setPAppletMain pythonEval = '" + pythonEval + "'");
-        super.eval(pythonEval);
-      }
+    Log.debug("ManagedInterpreter.setPAppletMain");
+    super.exec(SketchNamespace.BIND_SOURCE);
+    PyCallable bind = super.getValue("__pycessing_bind__", PyCallable.class);
+    try {
+      bind.call(SketchNamespace.bindArguments(pAppletConnector));
+    } finally {
+      bind.close();
     }
     
-//    exec("for name in dir(PAppletMain):\n"
-//        + "  if name.startswith('__') and name.endswith('__'):\n"
-//        + "    continue\n"
-//        + "  if (name == 'setup') or (name == 'draw') or (name == 'settings'):\n"
-//        + "    continue\n"
-//        + "  exec('global ' + name + '\n' + name + ' = PAppletMain.' + name)\n\n\n");
-    //exec("ellipse = PAppletMain.ellipse");
-    Util.log("ManagedInterpreter.setPAppletMain returning");
+    super.exec(DrawCommandBuffer.pythonSource());
+    drawBatchFlush = super.getValue("__pyc_batch__.flush", PyCallable.class);
+    retainedCache = new RetainedCache(pAppletConnector);
+    super.set("__pyc_retained__", retainedCache);
+    super.exec(RetainedCache.pythonSource());
+    super.set("__pyc_pixels__", new PixelBuffer(pAppletConnector));
+    super.exec(PixelBuffer.pythonSource());
+    super.set("__pyc_primitives__", new BatchPrimitives(pAppletConnector));
+    super.exec(BatchPrimitives.pythonSource());
+    super.set("__pyc_recorder__", pAppletConnector.getFrameRecorder());
+    super.exec(FrameRecorder.pythonSource());
+    Log.debug("ManagedInterpreter.setPAppletMain returning");
   }
 
 }
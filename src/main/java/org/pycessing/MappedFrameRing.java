@@ -0,0 +1,165 @@
+package org.pycessing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The last few frames in a memory-mapped file, for a reader on the same machine
+// to copy out without any encoding or pipe in between. The file is created when
+// the first frame arrives, sized for that frame; frames of another size are
+// skipped. The writer never waits for readers: a reader that falls more than
+// slots - 1 frames behind loses frames, and sees that from the sequence numbers.
+//
+// All values are little-endian. The header is 64 bytes:
+//
+//    0  8 bytes  magic, "PYCFRAME"
+//    8  int      version, 1
+//   12  int      number of slots
+//   16  int      width in pixels
+//   20  int      height in pixels
+//   24  int      pixel format, 1 = BGRA, 8 bits per channel
+//   28  int      header size, 64
+//   32  long     slot size in bytes, a multiple of 64
+//   40  long     sequence number of the newest complete frame, 0 before the first
+//
+// Frames are numbered from 1 in the order they were written. Frame s is in slot
+// (s - 1) % slots, which starts at 64 + slot * slot size:
+//
+//    0  long     sequence number of the frame in the slot, -1 while it's being written
+//    8  int      the sketch's frame number
+//   16           width * height * 4 bytes of pixels
+//
+// To read the newest frame, read s from offset 40, check the slot's sequence
+// number is s, copy the pixels, and check the slot's sequence number again. If
+// it changed, the frame was overwritten while it was being copied. The writer
+// fences its stores in that order; a reader has to keep its loads in order too,
+// with a load fence (or acquire loads) after each sequence number read and
+// before the second one.
+public class MappedFrameRing implements FrameStream {
+
+  public static final String SLOTS_PROPERTY = "pycessing.stream.slots";
+
+  static final byte[] MAGIC = "PYCFRAME".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final int FORMAT_BGRA = 1;
+  static final int HEADER_SIZE = 64;
+  static final int SLOT_HEADER_SIZE = 16;
+
+  static final int SLOTS_OFFSET = 12;
+  static final int WIDTH_OFFSET = 16;
+  static final int HEIGHT_OFFSET = 20;
+  static final int FORMAT_OFFSET = 24;
+  static final int HEADER_SIZE_OFFSET = 28;
+  static final int SLOT_SIZE_OFFSET = 32;
+  static final int SEQUENCE_OFFSET = 40;
+
+  private final Path path;
+  private final int slots;
+  private FileChannel channel;
+  private MappedByteBuffer map;
+  private int width;
+  private int height;
+  private long slotSize;
+  private long sequence = 0;
+  private boolean warned = false;
+  // Plain stores to the mapping can be reordered by the JIT or the CPU, and a
+  // reader could then see a slot's sequence number before its pixels. Java 8
+  // has no public fence, so storeFence() writes this: stores before a volatile
+  // write stay before it, and HotSpot puts a full barrier after it.
+  private volatile int barrier;
+
+  public MappedFrameRing(Path path) {
+    this(path, Integer.getInteger(SLOTS_PROPERTY, 4));
+  }
+
+  public MappedFrameRing(Path path, int slots) {
+    if (slots < 1) {
+      throw new IllegalArgumentException("slots must be at least 1, was " + slots);
+    }
+    this.path = path;
+    this.slots = slots;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  private void create(int width, int height) throws IOException {
+    this.width = width;
+    this.height = height;
+    slotSize = (SLOT_HEADER_SIZE + (long) width * height * 4 + 63) / 64 * 64;
+    long size = HEADER_SIZE + slotSize * slots;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(slots + " frames of " + width + "x" + height + " don't fit in one mapping");
+    }
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    map.order(ByteOrder.LITTLE_ENDIAN);
+    map.putInt(8, VERSION);
+    map.putInt(SLOTS_OFFSET, slots);
+    map.putInt(WIDTH_OFFSET, width);
+    map.putInt(HEIGHT_OFFSET, height);
+    map.putInt(FORMAT_OFFSET, FORMAT_BGRA);
+    map.putInt(HEADER_SIZE_OFFSET, HEADER_SIZE);
+    map.putLong(SLOT_SIZE_OFFSET, slotSize);
+    map.putLong(SEQUENCE_OFFSET, 0);
+    // Last, so a reader that finds the magic finds the rest of the header too
+    storeFence();
+    for (int i = 0; i < MAGIC.length; i++) {
+      map.put(i, MAGIC[i]);
+    }
+    Log.debug("MappedFrameRing: {} slots of {}x{} in {}", slots, width, height, path);
+  }
+
+  @Override
+  public void write(int[] pixels, int width, int height, int frame) throws IOException {
+    if (map == null) {
+      create(width, height);
+    } else if (width != this.width || height != this.height) {
+      if (!warned) {
+        Log.warn("MappedFrameRing: the sketch is now {}x{}, skipping frames that aren't {}x{}",
+            width, height, this.width, this.height);
+        warned = true;
+      }
+      return;
+    }
+    long next = sequence + 1;
+    int slot = (int) (HEADER_SIZE + ((next - 1) % slots) * slotSize);
+    map.putLong(slot, -1);
+    storeFence();
+    map.putInt(slot + 8, frame);
+    ByteBuffer data = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    data.position(slot + SLOT_HEADER_SIZE);
+    data.asIntBuffer().put(pixels, 0, width * height);
+    storeFence();
+    map.putLong(slot, next);
+    storeFence();
+    map.putLong(SEQUENCE_OFFSET, next);
+    sequence = next;
+  }
+
+  private void storeFence() {
+    barrier = 0;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  // The file is left behind for readers
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      map.force();
+      channel.close();
+      channel = null;
+    }
+  }
+
+}
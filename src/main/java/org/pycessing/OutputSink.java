@@ -0,0 +1,13 @@
+package org.pycessing;
+
+// Where the text a sketch writes to sys.stdout and sys.stderr ends up.
+// Python calls write() directly, on the interpreter's thread.
+public interface OutputSink {
+
+  public void write(String s);
+
+  public void flush();
+
+  public void close();
+
+}
@@ -1,32 +1,61 @@
 package org.pycessing;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Locale;
 
 
 import jep.JepException;
 import jep.python.PyCallable;
+import processing.awt.PGraphicsJava2D;
 import processing.core.PApplet;
 import processing.core.PConstants;
+import processing.core.PGraphics;
 import processing.core.PImage;
 import processing.core.PSurface;
+import processing.event.Event;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
 
 public class PAppletConnector extends PApplet implements Runnable{
   
   private String renderer=PConstants.JAVA2D;
   private Path sourceFile=null;
+  private SketchMetadata metadata;
   private ArrayList<String> args;
   private ManagedInterpreter interp;
   private boolean debug=false;
-  private final Object finishedLock = new Object();
-  public Integer frameCount=new Integer(0);
+  private final SketchLifecycle lifecycle = new SketchLifecycle();
+  private final FrameState frameState = new FrameState();
+  private final FrameMetrics metrics = new FrameMetrics();
+  private boolean headless=false;
+  private OutputSink outputSink;
+  private OutputSink errorSink;
+  private boolean watch=false;
+  private SketchWatcher watcher;
+  private final InputEvents inputEvents = new InputEvents();
+  private final ArrayList<Event> drainedEvents = new ArrayList<Event>();
+  private boolean pipelined=false;
+  private FramePipeline pipeline;
+  // With the pipeline, event handlers, reloads and REPL input wait for the
+  // next frame's turn on the Python thread
+  private ArrayList<Object[]> queuedHandlers = new ArrayList<Object[]>();
+  private boolean reloadQueued=false;
+  private final FrameRecorder recorder = new FrameRecorder();
+  private FrameStream frameStream;
+  private int exportedFrame=0;
+  // The first error from the sketch's Python, which runHeadless rethrows
+  private volatile JepException failure;
   
   public PAppletConnector() {
     super();
@@ -61,6 +90,73 @@ public class PAppletConnector extends PApplet implements Runnable{
     this.interp = interp;
   }
   
+  public FrameMetrics getMetrics() {
+    return metrics;
+  }
+  
+  public SketchLifecycle getLifecycle() {
+    return lifecycle;
+  }
+  
+  public InputEvents getInputEvents() {
+    return inputEvents;
+  }
+  
+  // Run the sketch's Python on its own thread, a frame ahead of rendering (see
+  // FramePipeline). Has to be set before the sketch starts.
+  public void setPipelined(boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+  
+  public FramePipeline getPipeline() {
+    return pipeline;
+  }
+  
+  // Whenever a frame can't be deferred the Python thread draws into g itself,
+  // which only Java2D allows. OpenGL's context and JavaFX's canvas belong to
+  // the thread that renders them.
+  static boolean canPipeline(PGraphics g) {
+    return g instanceof PGraphicsJava2D;
+  }
+  
+  // saveFrame() and recording every frame write through this, in the background
+  public FrameRecorder getFrameRecorder() {
+    return recorder;
+  }
+  
+  // Every frame drawn from now on is also written, unencoded, to stream
+  public void setFrameStream(FrameStream stream) {
+    frameStream = stream;
+  }
+  
+  public FrameStream getFrameStream() {
+    return frameStream;
+  }
+  
+  // Reload the sketch between frames whenever a Python file in its folder changes
+  public void setWatch(boolean watch) {
+    this.watch = watch;
+  }
+  
+  // Where the sketch's print output goes instead of the interpreter's default
+  // of System.out/System.err plus a capture buffer
+  public void setOutputSinks(OutputSink out, OutputSink err) {
+    outputSink = out;
+    errorSink = err;
+    if (interp != null) {
+      applyOutputSinks();
+    }
+  }
+  
+  private void applyOutputSinks() {
+    if (outputSink != null) {
+      interp.setOutputSink(outputSink);
+    }
+    if (errorSink != null) {
+      interp.setErrorSink(errorSink);
+    }
+  }
+  
   public void setSurface(PSurface s) {
     surface=s;
   }
@@ -74,13 +170,13 @@ public class PAppletConnector extends PApplet implements Runnable{
   }
 
   public synchronized void loadFile(String fileFromCLI) throws FileNotFoundException {
-    Util.log("PAppletConnector loadFile: " + fileFromCLI);
+    Log.debug("PAppletConnector loadFile: {}", fileFromCLI);
     sourceFile = Paths.get(fileFromCLI);
-    Util.log("PAppletConnector sourceFile set to: " + sourceFile.toString());
+    Log.debug("PAppletConnector sourceFile set to: {}", sourceFile);
     if (!Files.exists(sourceFile)) {
       throw new FileNotFoundException(fileFromCLI + " not found");
     }
-    Util.log("PAppletConnector running setSizeFromSetup");
+    Log.debug("PAppletConnector running setSizeFromSetup");
     setSizeFromSetup(sourceFile);
   }
 
@@ -88,8 +184,20 @@ public class PAppletConnector extends PApplet implements Runnable{
     return sourceFile;
   }
   
+  // Blocks reading System.in until end of input, then exits the sketch. The
+  // interpreter only exists once the animation thread has started, so wait
+  // for it first.
   public void startREPL() {
+    try {
+      lifecycle.await(SketchLifecycle.State.SETUP);
+    } catch (InterruptedException e) {
+      return;
+    }
+    if (interp == null) {
+      return;
+    }
     this.interp.startREPL();
+    exit();
   }
   
   @Override
@@ -112,172 +220,586 @@ public class PAppletConnector extends PApplet implements Runnable{
   
   @Override 
   public void start() {
-    Util.log("PAppletConnector start");
+    Log.debug("PAppletConnector start");
     
     super.start();
 
     
-    Util.log("PAppletConnector exit start");
+    Log.debug("PAppletConnector exit start");
   }
   
   @Override 
   public void handleDraw() {
-    Util.log("PAppletConnector handleDraw");
+    Log.trace("PAppletConnector handleDraw");
     if (interp == null) {
       // First run through the animation loop
+      RuntimeWarmup.await();
+      if (pipelined && pipeline == null) {
+        if (canPipeline(g)) {
+          pipeline = new FramePipeline(this);
+        } else {
+          Log.warn("PAppletConnector: --pipeline only works with JAVA2D, running {} without it", renderer);
+          pipelined = false;
+        }
+      }
       try {
-        interp = new ManagedInterpreter(this);
-        interp.set("width", (Integer) width);
-        interp.set("height", (Integer) height);
-        interp.exec("if 'settings' in dir():\n"
-            + "  settings()\n\n");
-        if (sourceFile != null) {
-          Util.log("PAppletConnector runSketch: running interp.runScript");
-          interp.runScript(sourceFile.toString());
+        onPython(() -> {
+          startInterpreter();
+          return null;
+        });
+        if (watch && sourceFile != null) {
+          startWatching();
         }
       } catch (JepException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+        sketchFailed("running the sketch", e);
       }
     }
+    // After noLoop() PApplet keeps calling handleDraw() but only draws on redraw()
+    if (isLooping() || redraw) {
+      metrics.beginFrame(System.nanoTime());
+    } else {
+      metrics.skipFrame();
+    }
     super.handleDraw();
-    Util.log("PAppletConnector exit handleDraw");
+    exportDrawnFrame();
+    metrics.endFrame(System.nanoTime());
+    if (pipeline != null) {
+      betweenPipelinedFrames();
+    } else if (!isLooping() && interp != null && !inputEvents.isEmpty()) {
+      // PApplet skips the frame, events included, after noLoop(). The handlers
+      // still have to run here, where the interpreter lives.
+      dequeueEvents();
+    }
+    if (frameCount > 0 && !lifecycle.hasReached(SketchLifecycle.State.RUNNING)) {
+      lifecycle.advance(SketchLifecycle.State.RUNNING);
+    }
+    if (pipeline == null) {
+      // REPL input runs between frames, within its time budget
+      if (interp != null) {
+        interp.processSubmissions();
+      }
+      if (watcher != null && watcher.pollChange()) {
+        reloadSketch();
+      }
+    }
+    Log.trace("PAppletConnector exit handleDraw");
+  }
+  
+  // Saves and streams the frame just drawn when every frame is being recorded
+  // or streamed, numbered as saveFrame() in its draw() would have
+  private void exportDrawnFrame() {
+    String pattern = recorder.getPattern();
+    if ((pattern == null && frameStream == null) || frameCount == 0 || frameCount == exportedFrame) {
+      return;
+    }
+    exportedFrame = frameCount;
+    int frame = frameCount - 1;
+    g.loadPixels();
+    if (pattern != null) {
+      recorder.save(g.pixels, g.pixelWidth, g.pixelHeight, savePath(FrameRecorder.insertFrame(pattern, frame)));
+    }
+    if (frameStream != null) {
+      try {
+        frameStream.write(g.pixels, g.pixelWidth, g.pixelHeight, frame);
+      } catch (IOException e) {
+        // Most likely the reader of a pipe has gone, so there's no one to draw for
+        Log.error("PAppletConnector: could not stream frame " + frame + ", stopping", e);
+        closeFrameStream();
+        exit();
+      }
+    }
+  }
+  
+  private void closeFrameStream() {
+    if (frameStream == null) {
+      return;
+    }
+    try {
+      frameStream.close();
+    } catch (IOException e) {
+      Log.error("PAppletConnector: could not close the frame stream", e);
+    }
+    frameStream = null;
+  }
+  
+  @Override
+  public void saveFrame() {
+    saveFrame("screen-####.tif");
   }
   
+  // Only copies the pixels; encoding and writing happen on FrameRecorder's
+  // threads. From the Python thread, the previous frame has to finish first.
   @Override
-  public synchronized void draw() {
-    Util.log("PAppletConnector draw");
+  public void saveFrame(String filename) {
+    if (pipeline != null) {
+      pipeline.beginDirect();
+    }
+    saveFrameTo(savePath(insertFrame(filename)));
+  }
+  
+  private void saveFrameTo(String file) {
+    g.loadPixels();
+    recorder.save(g.pixels, g.pixelWidth, g.pixelHeight, file);
+  }
+  
+  private void startInterpreter() throws JepException {
+    interp = new ManagedInterpreter(this);
+    if (pipeline != null) {
+      interp.setPipeline(pipeline);
+    }
+    applyOutputSinks();
+    syncFrameState();
+    if (sourceFile != null) {
+      Log.debug("PAppletConnector runSketch: running interp.runScript");
+      interp.runScript(sourceFile.toString());
+    }
+    interp.callSketchFunction(ManagedInterpreter.SETTINGS);
+  }
+  
+  // On the Python thread when there is one, otherwise right here
+  private <T> T onPython(FramePipeline.PythonTask<T> task) throws JepException {
+    return pipeline == null ? task.run() : pipeline.call(task);
+  }
+  
+  // Not synchronized: with the pipeline the animation thread waits in here for
+  // Python, which may call PApplet's synchronized noLoop(), loop() or redraw()
+  @Override
+  public void draw() {
+    Log.trace("PAppletConnector draw");
+    if (pipeline != null) {
+      drawPipelined();
+      return;
+    }
     String stdout;
     String stderr;
     try {
-      interp.exec("draw()");
-      Util.log("PAppletConnector draw finished. Incrementing frameCount.");
-      interp.eval("frameCount+=1");
+      long start = System.nanoTime();
+      syncFrameState();
+      long synced = System.nanoTime();
+      interp.callSketchFunction(ManagedInterpreter.DRAW);
+      long drawn = System.nanoTime();
+      Log.trace("PAppletConnector draw finished.");
       stdout = interp.getCapturedOutput();
       stderr = interp.getCapturedError();
-      Util.log("Draw stdout/err: \n" + stdout + "\n" + stderr);
+      metrics.add(FrameMetrics.Phase.SYNC, synced - start);
+      metrics.add(FrameMetrics.Phase.INTERPRETER, drawn - synced);
+      metrics.add(FrameMetrics.Phase.CAPTURE, System.nanoTime() - drawn);
+      if (Log.isTraceEnabled()) {
+        Log.trace("Draw stdout/err: \n{}\n{}", stdout, stderr);
+      }
     } catch (JepException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      sketchFailed(ManagedInterpreter.DRAW + "()", e);
+    }
+  }
+  
+  // Shows the frame Python finished while the last one was on screen, after
+  // starting the next. Python sees the frameCount its frame will be shown at.
+  private void drawPipelined() {
+    long start = System.nanoTime();
+    FramePipeline.CommandList frame = pipeline.awaitFrame();
+    if (frame == null) {
+      // Nothing was started ahead: this is the first frame, or a redraw()
+      // after noLoop()
+      produceFrame(frameCount);
+      frame = pipeline.awaitFrame();
+    }
+    long ready = System.nanoTime();
+    if (isLooping()) {
+      produceFrame(frameCount + 1);
+    }
+    long started = System.nanoTime();
+    frame.replay(this);
+    metrics.add(FrameMetrics.Phase.INTERPRETER, ready - start);
+    metrics.add(FrameMetrics.Phase.SYNC, started - ready);
+  }
+  
+  private void produceFrame(int frame) {
+    frameState.update(this, frame);
+    final ArrayList<Object[]> handlers = takeQueuedHandlers();
+    final boolean reload = takeReload();
+    pipeline.produce(() -> {
+      interp.syncFrameState(frameState);
+      runQueued(handlers, reload);
+      try {
+        interp.callSketchFunction(ManagedInterpreter.DRAW);
+      } catch (JepException e) {
+        sketchFailed(ManagedInterpreter.DRAW + "()", e);
+      }
+      String stdout = interp.getCapturedOutput();
+      String stderr = interp.getCapturedError();
+      if (Log.isTraceEnabled()) {
+        Log.trace("Draw stdout/err: \n{}\n{}", stdout, stderr);
+      }
+      interp.processSubmissions();
+      updateShadowed();
+      return null;
+    });
+  }
+  
+  // After noLoop() there's no next frame to run handlers, reloads and REPL
+  // input with, so they run here. A frame Python already finished is still shown.
+  private void betweenPipelinedFrames() {
+    if (interp == null) {
+      return;
+    }
+    if (watcher != null && watcher.pollChange()) {
+      reloadQueued = true;
+    }
+    if (isLooping()) {
+      return;
+    }
+    if (pipeline.hasPendingFrame()) {
+      redraw();
+      return;
+    }
+    if (!inputEvents.isEmpty()) {
+      dequeueEvents();
+    }
+    final ArrayList<Object[]> handlers = takeQueuedHandlers();
+    final boolean reload = takeReload();
+    try {
+      pipeline.call(() -> {
+        syncFrameState();
+        runQueued(handlers, reload);
+        interp.processSubmissions();
+        updateShadowed();
+        return null;
+      });
+    } catch (JepException e) {
+      sketchFailed("handling input", e);
+    }
+  }
+  
+  private ArrayList<Object[]> takeQueuedHandlers() {
+    ArrayList<Object[]> handlers = queuedHandlers;
+    queuedHandlers = new ArrayList<Object[]>();
+    return handlers;
+  }
+  
+  private boolean takeReload() {
+    boolean reload = reloadQueued;
+    reloadQueued = false;
+    return reload;
+  }
+  
+  private void runQueued(ArrayList<Object[]> handlers, boolean reload) {
+    if (reload) {
+      reloadSketch();
+    }
+    for (Object[] handler : handlers) {
+      try {
+        interp.callSketchFunction((String) handler[0], (Object[]) handler[1]);
+      } catch (JepException e) {
+        sketchFailed(handler[0] + "()", e);
+      }
     }
   }
   
   @Override
-  public synchronized void setup() {
-    Util.log("PAppletConnector setup");
+  public void setup() {
+    Log.debug("PAppletConnector setup");
+    lifecycle.advance(SketchLifecycle.State.SETUP);
     try {
-      this.interp.exec("if 'setup' in dir():\n"
-          + "  setup()\n\n");
+      onPython(() -> {
+        long start = System.nanoTime();
+        syncFrameState();
+        long synced = System.nanoTime();
+        this.interp.callSketchFunction(ManagedInterpreter.SETUP);
+        metrics.add(FrameMetrics.Phase.SYNC, synced - start);
+        metrics.add(FrameMetrics.Phase.INTERPRETER, System.nanoTime() - synced);
+        return null;
+      });
     } catch (JepException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      sketchFailed(ManagedInterpreter.SETUP + "()", e);
     }
   }
   
+  @Override
+  public void mousePressed() {
+    callSketchFunction(ManagedInterpreter.MOUSE_PRESSED);
+  }
+  
+  @Override
+  public void mouseReleased() {
+    callSketchFunction(ManagedInterpreter.MOUSE_RELEASED);
+  }
+  
+  @Override
+  public void mouseClicked() {
+    callSketchFunction(ManagedInterpreter.MOUSE_CLICKED);
+  }
+  
+  @Override
+  public void mouseDragged() {
+    callSketchFunction(ManagedInterpreter.MOUSE_DRAGGED);
+  }
+  
+  @Override
+  public void mouseMoved() {
+    callSketchFunction(ManagedInterpreter.MOUSE_MOVED);
+  }
+  
+  @Override
+  public void mouseEntered() {
+    callSketchFunction(ManagedInterpreter.MOUSE_ENTERED);
+  }
+  
+  @Override
+  public void mouseExited() {
+    callSketchFunction(ManagedInterpreter.MOUSE_EXITED);
+  }
+  
+  @Override
+  public void mouseWheel(MouseEvent event) {
+    // The wheel handler is the only one that needs the event to be useful
+    callSketchFunction(ManagedInterpreter.MOUSE_WHEEL, event);
+  }
+  
+  @Override
+  public void keyPressed() {
+    callSketchFunction(ManagedInterpreter.KEY_PRESSED);
+  }
+  
+  @Override
+  public void keyReleased() {
+    callSketchFunction(ManagedInterpreter.KEY_RELEASED);
+  }
+  
+  @Override
+  public void keyTyped() {
+    callSketchFunction(ManagedInterpreter.KEY_TYPED);
+  }
+  
+  private void callSketchFunction(String name, Object... args) {
+    if (interp == null) {
+      return;
+    }
+    if (pipeline != null) {
+      // Runs on the Python thread before the next frame's draw(), with that
+      // frame's mouse and key state
+      queuedHandlers.add(new Object[] { name, args });
+      return;
+    }
+    try {
+      syncFrameState();
+      interp.callSketchFunction(name, args);
+    } catch (JepException e) {
+      sketchFailed(name + "()", e);
+    }
+  }
+  
+  // The first error is kept for runHeadless. Every one goes to the sketch's
+  // error sink when it has one, like its own output, or else to the log.
+  private void sketchFailed(String where, JepException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    reportError(where, e);
+  }
+  
+  private void reportError(String where, Exception e) {
+    if (errorSink == null) {
+      Log.error("PAppletConnector: error in " + where, e);
+      return;
+    }
+    StringWriter trace = new StringWriter();
+    e.printStackTrace(new PrintWriter(trace));
+    errorSink.write("Error in " + where + ": " + trace);
+  }
+  
+  // The first error from the sketch's Python, or null
+  public JepException getFailure() {
+    return failure;
+  }
+  
+  // Push whatever changed in frameCount, width, height, and the mouse and key
+  // state to Python in a single call
+  private void syncFrameState() throws JepException {
+    updateShadowed();
+    if (frameState.update(this) > 0) {
+      interp.syncFrameState(frameState);
+    }
+  }
+  
+  private void updateShadowed() throws JepException {
+    frameState.setShadowed(FrameState.MOUSE_PRESSED, interp.hasSketchFunction(ManagedInterpreter.MOUSE_PRESSED));
+    frameState.setShadowed(FrameState.KEY_PRESSED, interp.hasSketchFunction(ManagedInterpreter.KEY_PRESSED));
+  }
+  
+  private void startWatching() {
+    try {
+      watcher = new SketchWatcher(sourceFile);
+    } catch (IOException e) {
+      Log.error("PAppletConnector: could not watch " + sourceFile.getParent(), e);
+    }
+  }
+  
+  private void stopWatching() {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+    }
+  }
+  
+  // Runs the changed source into the live interpreter. The window, the
+  // Processing state and anything the sketch lists in __keep__ stay as they are;
+  // setup() isn't run again.
+  void reloadSketch() {
+    long start = System.nanoTime();
+    try {
+      if (interp.reloadScript(sourceFile.toString())) {
+        Log.info("PAppletConnector: reloaded {} in {} ms", sourceFile.getFileName(),
+            (System.nanoTime() - start) / 1000000);
+      }
+    } catch (JepException e) {
+      // The sketch goes on with what it had, so this isn't a failure
+      reportError("reloading " + sourceFile.getFileName(), e);
+    }
+  }
+  
+  // Called from Python with the draw calls recorded while batchDraw() is on
+  // or a retained recording. With the pipeline they're kept for the frame in
+  // production instead.
+  public void replayCommands(byte[] ops, byte[] args) {
+    Log.trace("PAppletConnector.replayCommands {} commands", ops.length / 4);
+    if (pipeline != null && pipeline.defer(ops, args)) {
+      return;
+    }
+    DrawCommandBuffer.replay(this, ops, args);
+  }
+
+  // Events arrive on the surface's thread. They're only queued here; the
+  // handlers run on the animation thread in dequeueEvents().
+  @Override
+  public void postEvent(Event event) {
+    if (!inputEvents.post(event)) {
+      Log.debug("PAppletConnector: event queue full, dropped {}", event);
+    }
+  }
+  
+  // Once per frame, with motion merged (see InputEvents). Event handlers run
+  // from here, so their Python time counts as EVENTS.
+  @Override
+  protected void dequeueEvents() {
+    long start = System.nanoTime();
+    inputEvents.drain(drainedEvents);
+    for (int i = 0; i < drainedEvents.size(); i++) {
+      Event event = drainedEvents.get(i);
+      if (event instanceof MouseEvent) {
+        handleMouseEvent((MouseEvent) event);
+      } else if (event instanceof KeyEvent) {
+        handleKeyEvent((KeyEvent) event);
+      }
+    }
+    drainedEvents.clear();
+    metrics.add(FrameMetrics.Phase.EVENTS, System.nanoTime() - start);
+  }
+  
+  @Override
+  public void frameRate(float fps) {
+    metrics.setTargetFrameRate(fps);
+    super.frameRate(fps);
+  }
+  
+  @Override
+  public void dispose() {
+    lifecycle.advance(SketchLifecycle.State.DISPOSING);
+    stopWatching();
+    metrics.stop();
+    if (pipeline != null) {
+      pipeline.close();
+    }
+    // Frames still being written finish before the sketch goes away
+    recorder.close();
+    closeFrameStream();
+    super.dispose();
+    lifecycle.advance(SketchLifecycle.State.FINISHED);
+  }
+
   @Override
   public void exit() {
-    Util.log("PAppletConnector: Exit called.");
+    Log.debug("PAppletConnector: Exit called.");
+    if (headless) {
+      // There's no surface to stop. runHeadless sees this and finishes the loop.
+      finished = true;
+      return;
+    }
     super.exit();
   }
   
   @Override
   public void background(float b) {
-    Util.log("PAppletConnector.background(float: " + b + ")");
+    if (Log.isTraceEnabled()) {
+      Log.trace("PAppletConnector.background(float: {})", b);
+    }
     super.background(3.0f);
-    Util.log("PAppletConnector.background(float: " + b + ") returning");
   }
   
   @Override
   public void background(float a, float b) {
-    Util.log("PAppletConnector.background(float: " + a + ", float: " + b + ")");
+    if (Log.isTraceEnabled()) {
+      Log.trace("PAppletConnector.background(float: {}, float: {})", a, b);
+    }
     super.background(a,b);
-    Util.log("PAppletConnector.background(float: " + a + ", float: " + b + ") returning");
   }
   
   @Override
   public void background(float a, float b, float c) {
-    Util.log("PAppletConnector.background(float: " + a + ", float: " + b + ", float: " + c + ")");
+    if (Log.isTraceEnabled()) {
+      Log.trace("PAppletConnector.background(float: {}, float: {}, float: {})", a, b, c);
+    }
     super.background(a,b,c);
-    Util.log("PAppletConnector.background(float: " + a + ", float: " + b + ", float: " + c + ") returning");
   }
   
   @Override
   public void background(float a, float b, float c, float d) {
-    Util.log("PAppletConnector.background(float: " + a + ", float: " + b + ", float: " + c + ", float: " + d + ")");
+    if (Log.isTraceEnabled()) {
+      Log.trace("PAppletConnector.background(float: {}, float: {}, float: {}, float: {})", a, b, c, d);
+    }
     try {
       super.background(250.0f,250.0f,250.0f,250.0f);
     } catch (NullPointerException e) {
-      e.printStackTrace();
+      Log.error("PAppletConnector: background failed", e);
     }
-    Util.log("PAppletConnector.background(float: " + a + ", float: " + b + ", float: " + c + ", float: " + d + ") returning");
   }
   
   @Override
   public void background(int b) {
-    Util.log("PAppletConnector.background(int: " + b + ")");
+    if (Log.isTraceEnabled()) {
+      Log.trace("PAppletConnector.background(int: {})", b);
+    }
     super.background(b);
-    Util.log("PAppletConnector.background(int: " + b + ") returning");
   }
   
   @Override
   public void background(int a, float b) {
-    Util.log("PAppletConnector.background(int: " + a + ", float: " + b + ")");
+    if (Log.isTraceEnabled()) {
+      Log.trace("PAppletConnector.background(int: {}, float: {})", a, b);
+    }
     super.background(a, b);
-    Util.log("PAppletConnector.background(int: " + a + ", float: " + b + ") returning");
   }
   
   @Override
   public void background(PImage p) {
-    Util.log("PAppletConnector.background(PImage: " + p + ")");
+    Log.trace("PAppletConnector.background(PImage: {})", p);
     super.background(p);
-    Util.log("PAppletConnector.background(PImage: " + p + ") returning");
   }
   
   public void setSizeFromSetup(Path path) throws FileNotFoundException {
-    Util.log("PAppletConnector setSizeFromSetup with: " + path.toString());
-    Scanner fileScanner = new Scanner(path.toFile());
-    Pattern setupPattern = Pattern.compile("^def\\s*setup\\s*\\(\\s*\\)\\s*:.*$");
-    Matcher matcher = null;
-    
-    while (fileScanner.hasNextLine()) {
-      String line = fileScanner.nextLine();
-      Util.log("PAppletConnector setSizeFromSetup line: " + line);
-      matcher = setupPattern.matcher(line);
-      if (matcher.find()) {
-        Util.log("PAppletConnector setSizeFromSetup found setup on line: " + line);
-        lookThroughSetupFromFile(fileScanner);
-        return;
-      }
+    Log.debug("PAppletConnector setSizeFromSetup with: {}", path);
+    try {
+      metadata = SketchMetadata.read(path);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException(path + " not found");
+    } catch (IOException e) {
+      Log.error("PAppletConnector: could not read " + path, e);
+      return;
     }
-  }
-
-  private void lookThroughSetupFromFile(Scanner fileScanner) {
-    Util.log("PAppletConnector lookThroughSetupFromFile");
-    Pattern sizePattern = Pattern.compile("^\\s+size\\s*\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*,?\\s*([A-Z,0-9]+)?\\s*\\).*$");
-    Pattern outOfSetup = Pattern.compile("^\\S+.*$");
-    String line;
-    Matcher matcher;
-    
-    while (fileScanner.hasNextLine()) {
-      line = fileScanner.nextLine();
-      Util.log("PAppletConnector lookThroughSetupFromFile line: " + line);
-      matcher = outOfSetup.matcher(line);
-      if (matcher.find()) {
-        Util.log("PAppletConnector lookThroughSetupFromFile outOfSetup matched line: " + line + " \nReturning.");
-        return;
-      }
-      matcher = sizePattern.matcher(line);
-      if (matcher.find()) {
-        String w = matcher.group(1);
-        String h = matcher.group(2);
-        String r = matcher.group(3);
-        Util.log("Found usable size: " + line + " " + w + " " + h + " " + r);
-        width = Integer.parseInt(w);
-        height = Integer.parseInt(h);
-        setRenderer(r);
-        return;
-      }
+    if (metadata.getWidth() > 0 && metadata.getHeight() > 0) {
+      width = metadata.getWidth();
+      height = metadata.getHeight();
     }
+    setRenderer(metadata.getRenderer());
   }
 
   void setRenderer(String r) {
@@ -309,9 +831,33 @@ public class PAppletConnector extends PApplet implements Runnable{
 
   @Override 
   public synchronized void settings() {
-    Util.log("PAppletConnector settings interp=" + interp);
-    Util.log("PAppletConnector settings running super.size(" + width + "," + height + "," + renderer);
-    super.size(width,height,renderer);
+    Log.debug("PAppletConnector settings interp={}", interp);
+    lifecycle.advance(SketchLifecycle.State.SETTINGS);
+    if (metadata != null && metadata.isFullScreen()) {
+      Log.debug("PAppletConnector settings running super.fullScreen({}, {})", renderer, metadata.getDisplay());
+      if (metadata.getDisplay() == SketchMetadata.UNSET) {
+        super.fullScreen(renderer);
+      } else {
+        super.fullScreen(renderer, metadata.getDisplay());
+      }
+    } else if (metadata != null && metadata.getOutputPath() != null) {
+      super.size(width, height, renderer, metadata.getOutputPath());
+    } else {
+      Log.debug("PAppletConnector settings running super.size({},{},{})", width, height, renderer);
+      super.size(width,height,renderer);
+    }
+    if (metadata != null) {
+      if (metadata.getSmooth() == 0) {
+        super.noSmooth();
+      } else if (metadata.getSmooth() > 0) {
+        super.smooth(metadata.getSmooth());
+      }
+      if (metadata.getPixelDensity() == SketchMetadata.DISPLAY_DENSITY) {
+        super.pixelDensity(displayDensity());
+      } else if (metadata.getPixelDensity() > 0) {
+        super.pixelDensity(metadata.getPixelDensity());
+      }
+    }
   }
 
   @Override
@@ -324,30 +870,139 @@ public class PAppletConnector extends PApplet implements Runnable{
 
     String[] argsArray = new String[args.size()+1];
 
-    Util.log("PAppletConnector runSketch: adding args");
+    Log.debug("PAppletConnector runSketch: adding args");
     args.add(0, "org.pycessing.PAppletConnector");
     argsArray = args.toArray(argsArray);
     if (argsArray == null) {
       argsArray = new String[] {};
     }
 
-    if (Pycessing.VERBOSE) {
-      System.out.print("PAppletConnector runSketch: running super.runsketch([");
-      for (int i=0; i<argsArray.length; i++) {
-        System.out.print(argsArray[i] + ", ");
+    // Boot Python while the surface is created
+    RuntimeWarmup.start();
+    metrics.start(metricsId());
+
+    final String[] sketchArgs = argsArray;
+    Log.debug(() -> "PAppletConnector runSketch: running super.runsketch(" + Arrays.toString(sketchArgs) + ", null)");
+    super.runSketch(argsArray);
+    Log.debug("PAppletConnector runSketch: complete. Exiting");
+  }
+  
+  // The MXBean's name: the script, and which sketch it is when several run
+  private String metricsId() {
+    return (sourceFile == null ? "sketch" : sourceFile.getFileName().toString())
+        + "@" + Integer.toHexString(System.identityHashCode(this));
+  }
+
+  // Renders into an offscreen JAVA2D surface on the calling thread, as fast as
+  // the sketch allows, until frames draw() calls have been made (0 means until
+  // the sketch calls exit() or noLoop()). out is a directory to write every
+  // frame into, an image file to write only the last frame to, or null.
+  // Returns the number of frames drawn. The first error from the sketch's
+  // Python, in the script, setup(), draw() or a handler, stops it and is thrown.
+  public int runHeadless(int frames, Path out) throws JepException {
+    headless = true;
+    lifecycle.advance(SketchLifecycle.State.SETTINGS);
+    if (!JAVA2D.equals(renderer)) {
+      Log.warn("PAppletConnector: {} is not available headless, rendering with JAVA2D", renderer);
+      renderer = JAVA2D;
+    }
+    boolean singleImage = out != null && isImageFile(out);
+    if (out != null && !singleImage) {
+      try {
+        Files.createDirectories(out);
+      } catch (IOException e) {
+        Log.error("PAppletConnector: could not create " + out, e);
+        lifecycle.advance(SketchLifecycle.State.FINISHED);
+        return 0;
       }
-      System.out.print("]" + ", null)\n");
     }
-    super.runSketch(argsArray);
-    Util.log("PAppletConnector runSketch: complete. Exiting");
+
+    PGraphicsJava2D graphics = new PGraphicsJava2D();
+    graphics.setParent(this);
+    graphics.setPrimary(false);
+    graphics.setSize(width, height);
+    // Without an image of the right size PGraphicsJava2D asks the default
+    // screen for one, which fails when there is no display
+    graphics.image = new BufferedImage(width * graphics.pixelDensity, height * graphics.pixelDensity,
+        BufferedImage.TYPE_INT_ARGB);
+    g = graphics;
+    metrics.start(metricsId());
+    // Initial frame state and setup(). draw() runs on every later pass.
+    handleDraw();
+    if (interp == null) {
+      metrics.stop();
+      lifecycle.advance(SketchLifecycle.State.FINISHED);
+      if (failure != null) {
+        throw failure;
+      }
+      return 0;
+    }
+    
+    int drawn = 0;
+    try {
+      // Nothing is drawn once the script or setup() has failed
+      boolean animated = failure == null && onPython(() -> interp.hasSketchFunction(ManagedInterpreter.DRAW));
+      if (failure == null && !animated) {
+        // A static sketch: whatever setup() drew is the only frame
+        saveHeadlessFrame(out, singleImage, 0);
+      }
+      while (animated && !finished && failure == null && (frames <= 0 || drawn < frames)) {
+        handleDraw();
+        drawn++;
+        if (out != null && (!singleImage || finished || drawn == frames || !isLooping())) {
+          saveHeadlessFrame(out, singleImage, frameCount - 1);
+        }
+        if (!isLooping()) {
+          break;
+        }
+      }
+    } finally {
+      finished = true;
+      lifecycle.advance(SketchLifecycle.State.DISPOSING);
+      stopWatching();
+      metrics.stop();
+      onPython(() -> {
+        interp.close();
+        return null;
+      });
+      if (pipeline != null) {
+        pipeline.close();
+      }
+      recorder.close();
+      closeFrameStream();
+      lifecycle.advance(SketchLifecycle.State.FINISHED);
+    }
+    Log.debug("PAppletConnector runHeadless drew {} frames", drawn);
+    if (failure != null) {
+      throw failure;
+    }
+    return drawn;
   }
   
-  public void waitForFinish() throws InterruptedException {
-    synchronized(finishedLock) {
-      while (!finished) {
-        finishedLock.wait(100);
+  private void saveHeadlessFrame(Path out, boolean singleImage, int frame) {
+    if (out == null) {
+      return;
+    }
+    Path file = singleImage ? out : framePath(out, frame);
+    saveFrameTo(file.toAbsolutePath().toString());
+  }
+  
+  static boolean isImageFile(Path path) {
+    String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+    for (String extension : new String[] { ".png", ".jpg", ".jpeg", ".tga", ".tif", ".tiff", ".gif", ".bmp" }) {
+      if (name.endsWith(extension)) {
+        return true;
       }
     }
+    return false;
+  }
+  
+  static Path framePath(Path directory, int frame) {
+    return directory.resolve(String.format("frame-%06d.png", frame));
+  }
+  
+  public void waitForFinish() throws InterruptedException {
+    lifecycle.await(SketchLifecycle.State.FINISHED);
   }
   
 
@@ -0,0 +1,43 @@
+package org.pycessing;
+
+import java.io.PrintStream;
+
+public class PassthroughSink implements OutputSink {
+
+  private final PrintStream stream;
+  private final boolean toStderr;
+
+  public PassthroughSink(PrintStream stream) {
+    this.stream = stream;
+    this.toStderr = false;
+  }
+
+  // Follows System.out or System.err, even if they are replaced later
+  public PassthroughSink(boolean toStderr) {
+    this.stream = null;
+    this.toStderr = toStderr;
+  }
+
+  private PrintStream getStream() {
+    if (stream != null) {
+      return stream;
+    }
+    return toStderr ? System.err : System.out;
+  }
+
+  @Override
+  public void write(String s) {
+    getStream().print(s);
+  }
+
+  @Override
+  public void flush() {
+    getStream().flush();
+  }
+
+  @Override
+  public void close() {
+    flush();
+  }
+
+}
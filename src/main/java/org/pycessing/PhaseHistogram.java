@@ -0,0 +1,101 @@
+package org.pycessing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram of nanosecond durations: 8 buckets per power of two, so
+// any recorded value is reported within 12.5%. Recording is a few array writes
+// with no allocation or locking. It assumes a single writer (the animation
+// thread); readers such as JMX see values at most one record() behind.
+public class PhaseHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Up to 2^40 ns, about 18 minutes. Anything longer lands in the last bucket.
+  private static final int MAX_EXPONENT = 40;
+  static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private static final int COUNT = 0;
+  private static final int SUM = 1;
+  private static final int MAX = 2;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLongArray totals = new AtomicLongArray(3);
+
+  static int bucketOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return nanos < 0 ? 0 : (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  // Smallest value that lands in the bucket
+  static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int sub = bucket % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  public void record(long nanos) {
+    int bucket = bucketOf(nanos);
+    buckets.lazySet(bucket, buckets.get(bucket) + 1);
+    totals.lazySet(SUM, totals.get(SUM) + nanos);
+    if (nanos > totals.get(MAX)) {
+      totals.lazySet(MAX, nanos);
+    }
+    // Last, so a reader that sees the count also sees the bucket
+    totals.set(COUNT, totals.get(COUNT) + 1);
+  }
+
+  public long getCount() {
+    return totals.get(COUNT);
+  }
+
+  public long getMax() {
+    return totals.get(MAX);
+  }
+
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) totals.get(SUM) / count;
+  }
+
+  // Upper end of the bucket holding the p'th percentile (0-100), capped at the
+  // largest value seen
+  public long getPercentile(double p) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * Math.min(Math.max(p, 0), 100) / 100.0);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+        return Math.min(upper, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    for (int i = 0; i < totals.length(); i++) {
+      totals.set(i, 0);
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+package org.pycessing;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+// Frames back to back with nothing in between: width * height * 4 bytes each.
+// That is what ffmpeg reads with
+//
+//   -f rawvideo -pix_fmt bgra -video_size WIDTHxHEIGHT -framerate FPS -i -
+//
+// The write blocks while the reader is behind, so the sketch runs no faster
+// than it is consumed. Frames of a different size than the first are skipped.
+public class PipeFrameStream implements FrameStream {
+
+  private final WritableByteChannel channel;
+  private ByteBuffer buffer;
+  private int width = -1;
+  private int height = -1;
+  private boolean warned = false;
+
+  public PipeFrameStream(OutputStream out) {
+    channel = Channels.newChannel(out);
+  }
+
+  // The process's real standard output. System.out is pointed at System.err
+  // from here on, so sketch output and anything else printed can't end up in
+  // the middle of a frame.
+  public static PipeFrameStream toStdout() {
+    PipeFrameStream stream = new PipeFrameStream(new FileOutputStream(FileDescriptor.out));
+    System.out.flush();
+    System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+    return stream;
+  }
+
+  @Override
+  public void write(int[] pixels, int width, int height, int frame) throws IOException {
+    if (buffer == null) {
+      this.width = width;
+      this.height = height;
+      buffer = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+      Log.debug("PipeFrameStream: streaming {}x{} bgra", width, height);
+    } else if (width != this.width || height != this.height) {
+      if (!warned) {
+        Log.warn("PipeFrameStream: the sketch is now {}x{}, skipping frames that aren't {}x{}",
+            width, height, this.width, this.height);
+        warned = true;
+      }
+      return;
+    }
+    buffer.clear();
+    buffer.asIntBuffer().put(pixels, 0, width * height);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,80 @@
+package org.pycessing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import jep.DirectNDArray;
+import processing.core.PApplet;
+
+// The sketch's pixels as a NumPy array. Python gets a uint32 array of shape
+// (pixelHeight, pixelWidth) from loadPixelArray(), works on it with
+// vectorized operations, and hands it back with updatePixelArray().
+//
+// Processing keeps pixels[] on the Java heap and the JAVA2D renderer copies it
+// to and from its image on loadPixels()/updatePixels(), so there is no native
+// memory for NumPy to share with the renderer. Instead the array is backed by a
+// direct buffer that NumPy wraps without copying (jep's DirectNDArray), and
+// load()/update() move the frame between it and pixels[] in one bulk copy
+// each, instead of one JNI call per pixel. The buffer is kept between frames
+// and only reallocated when the sketch's size changes.
+//
+// Needs jep built with NumPy support.
+public class PixelBuffer {
+
+  private final PApplet applet;
+  private IntBuffer buffer;
+  private DirectNDArray<IntBuffer> array;
+
+  public PixelBuffer(PApplet applet) {
+    this.applet = applet;
+  }
+
+  public DirectNDArray<IntBuffer> load() {
+    applet.loadPixels();
+    int[] pixels = applet.pixels;
+    ensureCapacity(pixels.length);
+    buffer.clear();
+    buffer.put(pixels, 0, pixels.length);
+    return array;
+  }
+
+  public void update() {
+    int[] pixels = applet.pixels;
+    if (buffer == null || pixels == null || buffer.capacity() != pixels.length) {
+      // Nothing loaded, or the sketch changed size since
+      return;
+    }
+    buffer.clear();
+    buffer.get(pixels, 0, pixels.length);
+    applet.updatePixels();
+  }
+
+  IntBuffer getBuffer() {
+    return buffer;
+  }
+
+  private void ensureCapacity(int length) {
+    if (buffer != null && buffer.capacity() == length) {
+      return;
+    }
+    int width = applet.g.pixelWidth;
+    int height = length / Math.max(width, 1);
+    buffer = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    array = new DirectNDArray<IntBuffer>(buffer, true, height, width);
+  }
+
+  static String pythonSource() {
+    return PYTHON_SOURCE;
+  }
+
+  // Recorded draw calls are flushed first so the pixels include them, and with
+  // a FramePipeline the previous frame is finished first
+  private static final String PYTHON_SOURCE = "def loadPixelArray():\n"
+      + "  __pyc_batch__.direct()\n"
+      + "  return __pyc_pixels__.load()\n"
+      + "def updatePixelArray():\n"
+      + "  __pyc_batch__.direct()\n"
+      + "  __pyc_pixels__.update()\n";
+
+}
@@ -2,7 +2,9 @@ package org.pycessing;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 import org.apache.commons.cli.*;
@@ -18,6 +20,13 @@ public class Pycessing {
   public static boolean INTERACTIVE=false;
   public static boolean VERBOSE=false;
   public static String fileFromCLI=null;
+  public static boolean HEADLESS=false;
+  public static int FRAMES=0;
+  public static String OUTPUT=null;
+  public static boolean RELOAD=false;
+  public static boolean PIPELINE=false;
+  public static String RECORD=null;
+  public static String STREAM=null;
 
   public static void main(String[] args) {
     
@@ -25,12 +34,16 @@ public class Pycessing {
     try {
       getArgs(options,args);
     } catch (ParseException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      Log.error(e.getMessage());
       showHelp("", false);
       return;
     }
     
+    if (HEADLESS) {
+      // Before anything touches AWT
+      System.setProperty("java.awt.headless", "true");
+    }
+    
     if (fileFromCLI != null) {
       try {
         PyApplet.loadFile(fileFromCLI);
@@ -39,8 +52,34 @@ public class Pycessing {
       }
     }
     
-    //PyApplet.startThread(PAppletArgs);
+    PyApplet.setWatch(RELOAD);
+    PyApplet.setPipelined(PIPELINE);
+    PyApplet.getFrameRecorder().record(RECORD);
+    if (STREAM != null) {
+      try {
+        PyApplet.setFrameStream(FrameStream.open(STREAM));
+      } catch (IOException e) {
+        System.err.println("Could not stream to " + STREAM + ": " + e.getLocalizedMessage());
+        return;
+      }
+    }
+    
+    if (HEADLESS) {
+      if (fileFromCLI == null) {
+        showHelp("--headless requires a FILE", false);
+        return;
+      }
+      try {
+        PyApplet.runHeadless(FRAMES, OUTPUT == null ? null : Paths.get(OUTPUT));
+      } catch (JepException e) {
+        // The traceback was reported where it was raised
+        System.err.println("The sketch stopped with an error");
+      }
+      return;
+    }
     
+    PyApplet.setArgs(PAppletArgs);
+    PyApplet.runSketch();
     
     if (INTERACTIVE) {
       PyApplet.startREPL();
@@ -126,6 +165,49 @@ public class Pycessing {
         .longOpt("sketch-path")
         .desc("Set the sketch folder. This folder will be used as the default location for commands like \"saveFrame()\"")
         .build();
+    final Option headlessOption = Option.builder("x")
+        .required(false)
+        .hasArg(false)
+        .longOpt("headless")
+        .desc("Render offscreen with no window, as fast as possible")
+        .build();
+    final Option framesOption = Option.builder("n")
+        .required(false)
+        .hasArg(true)
+        .type(Integer.class)
+        .longOpt("frames")
+        .desc("With --headless, stop after <arg> frames")
+        .build();
+    final Option outOption = Option.builder("o")
+        .required(false)
+        .hasArg(true)
+        .longOpt("out")
+        .desc("With --headless, write every frame into the directory <arg>, or only the last frame if <arg> is an image file like out.png")
+        .build();
+    final Option reloadOption = Option.builder("r")
+        .required(false)
+        .hasArg(false)
+        .longOpt("reload")
+        .desc("Reload the sketch whenever a Python file in its folder changes, keeping the window open")
+        .build();
+    final Option recordOption = Option.builder("e")
+        .required(false)
+        .hasArg(true)
+        .longOpt("record")
+        .desc("Save every frame in the background to <arg>, with #### replaced by the frame number, e.g. frames/####.png")
+        .build();
+    final Option streamOption = Option.builder("t")
+        .required(false)
+        .hasArg(true)
+        .longOpt("stream")
+        .desc("Write every frame's raw pixels to <arg>, a ring file for a local reader, or - for standard output")
+        .build();
+    final Option pipelineOption = Option.builder("pl")
+        .required(false)
+        .hasArg(false)
+        .longOpt("pipeline")
+        .desc("Run draw() on its own thread, one frame ahead of rendering")
+        .build();
     final Option helpOption = Option.builder("h")
         .required(false)
         .hasArg(false)
@@ -143,6 +225,13 @@ public class Pycessing {
     options.addOption(stopColorOption);
     options.addOption(hideStopOption);
     options.addOption(sketchPathOption);
+    options.addOption(headlessOption);
+    options.addOption(framesOption);
+    options.addOption(outOption);
+    options.addOption(reloadOption);
+    options.addOption(pipelineOption);
+    options.addOption(recordOption);
+    options.addOption(streamOption);
     options.addOption(helpOption);
     
     return options;
@@ -240,6 +329,44 @@ public class Pycessing {
       PAppletArgs.add(PApplet.ARGS_HIDE_STOP);
     }
     
+    if (cmd.hasOption("x")) {
+      HEADLESS=true;
+    }
+    
+    if (cmd.hasOption("n")) {
+      String n = cmd.getOptionValue("n");
+      try {
+        FRAMES = Integer.parseInt(n);
+      } catch (NumberFormatException e) {
+        FRAMES = -1;
+      }
+      if (FRAMES < 0) {
+        FRAMES = 0;
+        showHelp("Frames argument must be a positive number. Received: " + n, false);
+        return;
+      }
+    }
+    
+    if (cmd.hasOption("o")) {
+      OUTPUT = cmd.getOptionValue("o");
+    }
+    
+    if (cmd.hasOption("r")) {
+      RELOAD=true;
+    }
+    
+    if (cmd.hasOption("pl")) {
+      PIPELINE=true;
+    }
+    
+    if (cmd.hasOption("e")) {
+      RECORD = cmd.getOptionValue("e");
+    }
+    
+    if (cmd.hasOption("t")) {
+      STREAM = cmd.getOptionValue("t");
+    }
+    
     if (cmd.hasOption("s")) {
       String path = cmd.getOptionValue("s");
       File directory = new File(path);
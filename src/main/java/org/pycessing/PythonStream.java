@@ -0,0 +1,38 @@
+package org.pycessing;
+
+// The object installed as sys.stdout/sys.stderr. Python writes straight into
+// it, so nothing has to be read back out of the interpreter after each call.
+public class PythonStream {
+
+  private volatile OutputSink sink;
+
+  public PythonStream(OutputSink sink) {
+    this.sink = sink;
+  }
+
+  public OutputSink getSink() {
+    return sink;
+  }
+
+  public void setSink(OutputSink sink) {
+    this.sink = sink;
+  }
+
+  public int write(String s) {
+    sink.write(s);
+    return s.length();
+  }
+
+  public void flush() {
+    sink.flush();
+  }
+
+  public boolean isatty() {
+    return false;
+  }
+
+  public boolean writable() {
+    return true;
+  }
+
+}
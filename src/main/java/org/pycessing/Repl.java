@@ -0,0 +1,148 @@
+package org.pycessing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+// A console for a running sketch. Lines are grouped into complete statements
+// the way the Python prompt does it, and each statement is queued on the
+// interpreter as its own submission. Everything that's already been typed or
+// pasted is queued before waiting, so a long paste is spread over as many
+// frames as the REPL budget needs instead of holding up one.
+public class Repl implements Runnable {
+
+  public static final String PROMPT = ">>> ";
+  public static final String CONTINUATION_PROMPT = "... ";
+  
+  private static final Pattern COMPOUND = Pattern.compile("(@|(async\\s+)?(def|class|if|for|while|with|try)\\b)");
+
+  private final ManagedInterpreter interpreter;
+  private final BufferedReader in;
+  private final PrintStream out;
+  private final PrintStream err;
+
+  public Repl(ManagedInterpreter interpreter, InputStream in, PrintStream out, PrintStream err) {
+    this.interpreter = interpreter;
+    this.in = new BufferedReader(new InputStreamReader(in));
+    this.out = out;
+    this.err = err;
+  }
+
+  @Override
+  public void run() {
+    List<CompletableFuture<EvalResult>> pending = new ArrayList<CompletableFuture<EvalResult>>();
+    List<String> block = new ArrayList<String>();
+    try {
+      while (true) {
+        if (pending.isEmpty() || !in.ready()) {
+          report(pending);
+          out.print(block.isEmpty() ? PROMPT : CONTINUATION_PROMPT);
+          out.flush();
+        }
+        String line = in.readLine();
+        if (line == null) {
+          break;
+        }
+        if (block.isEmpty() && line.trim().isEmpty()) {
+          continue;
+        }
+        block.add(line);
+        if (isComplete(block)) {
+          pending.add(interpreter.submitInteractive(String.join("\n", block) + "\n"));
+          block.clear();
+        }
+      }
+      if (!block.isEmpty()) {
+        pending.add(interpreter.submitInteractive(String.join("\n", block) + "\n"));
+      }
+      report(pending);
+      out.println();
+    } catch (IOException e) {
+      Log.error("Repl: could not read the input", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // The interpreter was closed under us
+      err.println(e.getCause().getMessage());
+    }
+  }
+
+  // Waits for each queued submission in order and prints what it printed
+  private void report(List<CompletableFuture<EvalResult>> pending) throws InterruptedException, ExecutionException {
+    for (CompletableFuture<EvalResult> future : pending) {
+      EvalResult result = future.get();
+      out.print(result.getOutput());
+      out.flush();
+      err.print(result.getError());
+      err.flush();
+    }
+    pending.clear();
+  }
+
+  // A block is complete once brackets and triple-quoted strings are closed, and
+  // for a compound statement (def, if, for, ...) once a blank line ends it
+  static boolean isComplete(List<String> lines) {
+    int depth = 0;
+    boolean inTripleQuote = false;
+    String tripleQuote = null;
+    boolean continued = false;
+    for (String line : lines) {
+      int i = 0;
+      while (i < line.length()) {
+        char c = line.charAt(i);
+        if (inTripleQuote) {
+          if (line.startsWith(tripleQuote, i)) {
+            inTripleQuote = false;
+            i += 3;
+          } else {
+            i++;
+          }
+          continue;
+        }
+        if (c == '#') {
+          break;
+        } else if (c == '\'' || c == '"') {
+          String triple = new String(new char[] { c, c, c });
+          if (line.startsWith(triple, i)) {
+            inTripleQuote = true;
+            tripleQuote = triple;
+            i += 3;
+            continue;
+          }
+          // Skip a single-line string
+          i++;
+          while (i < line.length() && line.charAt(i) != c) {
+            i += line.charAt(i) == '\\' ? 2 : 1;
+          }
+        } else if (c == '(' || c == '[' || c == '{') {
+          depth++;
+        } else if (c == ')' || c == ']' || c == '}') {
+          depth--;
+        }
+        i++;
+      }
+      continued = line.endsWith("\\");
+    }
+    if (inTripleQuote || depth > 0 || continued) {
+      return false;
+    }
+    String first = stripComment(lines.get(0)).trim();
+    if (!first.endsWith(":") && !COMPOUND.matcher(first).lookingAt()) {
+      return true;
+    }
+    return lines.size() > 1 && lines.get(lines.size() - 1).trim().isEmpty();
+  }
+
+  private static String stripComment(String line) {
+    int hash = line.indexOf('#');
+    return hash < 0 ? line : line.substring(0, hash);
+  }
+
+}
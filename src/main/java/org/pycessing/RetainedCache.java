@@ -0,0 +1,211 @@
+package org.pycessing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.core.PApplet;
+
+// Draw calls recorded once and replayed on every later frame. A function
+// decorated with @retained in Python runs with the batchDraw() recorder on the
+// first time it's called with a given set of arguments; after that, calls with
+// the same arguments replay the recording in one call into Java and the
+// Python doesn't run at all. Replay goes through the same PApplet methods as
+// immediate mode, so it works with any renderer.
+//
+// Only the calls DrawCommandBuffer can record are retained. A function that
+// draws anything else (text(), image(), an int color) still draws correctly,
+// but is run every time instead.
+//
+// Recordings are kept in least-recently-used order, and the oldest are dropped
+// once they take up more than -Dpycessing.retained.max bytes (16 MB by
+// default). Only the thread running the sketch's Python uses the cache.
+public class RetainedCache {
+
+  public static final String MAX_BYTES_PROPERTY = "pycessing.retained.max";
+  private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+  private static final class Recording {
+    final byte[] ops;
+    final byte[] args;
+
+    Recording(byte[] ops, byte[] args) {
+      this.ops = ops;
+      this.args = args;
+    }
+
+    long size() {
+      return ops.length + args.length;
+    }
+  }
+
+  private final PApplet applet;
+  private final long maxBytes;
+  private final LinkedHashMap<String, Recording> recordings = new LinkedHashMap<String, Recording>(16, 0.75f, true);
+  private long bytes = 0;
+
+  public RetainedCache(PApplet applet) {
+    this(applet, Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+  }
+
+  public RetainedCache(PApplet applet, long maxBytes) {
+    this.applet = applet;
+    this.maxBytes = maxBytes;
+  }
+
+  // Returns false if there's no recording for the key
+  public boolean replay(String key) {
+    Recording recording = recordings.get(key);
+    if (recording == null) {
+      return false;
+    }
+    if (applet instanceof PAppletConnector) {
+      // Which may keep it for a pipelined frame instead
+      ((PAppletConnector) applet).replayCommands(recording.ops, recording.args);
+    } else {
+      DrawCommandBuffer.replay(applet, recording.ops, recording.args);
+    }
+    return true;
+  }
+
+  public void store(String key, byte[] ops, byte[] args) {
+    invalidate(key);
+    Recording recording = new Recording(ops, args);
+    if (recording.size() > maxBytes) {
+      Log.debug("RetainedCache: {} is larger than the whole cache, not keeping it", key);
+      return;
+    }
+    recordings.put(key, recording);
+    bytes += recording.size();
+    Iterator<Recording> eldest = recordings.values().iterator();
+    while (bytes > maxBytes) {
+      bytes -= eldest.next().size();
+      eldest.remove();
+    }
+  }
+
+  public void invalidate(String key) {
+    Recording recording = recordings.remove(key);
+    if (recording != null) {
+      bytes -= recording.size();
+    }
+  }
+
+  public void invalidatePrefix(String prefix) {
+    Iterator<Map.Entry<String, Recording>> entries = recordings.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<String, Recording> entry = entries.next();
+      if (entry.getKey().startsWith(prefix)) {
+        bytes -= entry.getValue().size();
+        entries.remove();
+      }
+    }
+  }
+
+  public void clear() {
+    recordings.clear();
+    bytes = 0;
+  }
+
+  public int size() {
+    return recordings.size();
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  static String pythonSource() {
+    return PYTHON_SOURCE;
+  }
+
+  // @retained keys recordings by the function's qualified name and the repr()
+  // of its arguments, so the arguments should be values whose repr() is stable
+  // (numbers, strings, tuples). A replayed call returns what the recorded call
+  // returned. A @retained function called while another is recording is
+  // recorded into the outer one as well as on its own. invalidateRetained(f)
+  // drops every recording of f, invalidateRetained(f, *args) just one, and
+  // invalidateRetained() all.
+  private static final String PYTHON_SOURCE = "class __PycRetained__(object):\n"
+      + "  def __init__(self, function):\n"
+      + "    self.function = function\n"
+      + "    self.prefix = '%s.%s|' % (getattr(function, '__module__', None), getattr(function, '__qualname__', function.__name__))\n"
+      + "    self.direct = {}\n"
+      + "    self.results = {}\n"
+      + "    self.__name__ = function.__name__\n"
+      + "    self.__doc__ = function.__doc__\n"
+      + "  def key(self, args, kwargs):\n"
+      + "    return self.prefix + repr((args, sorted(kwargs.items())))\n"
+      + "  def __call__(self, *args, **kwargs):\n"
+      + "    key = self.key(args, kwargs)\n"
+      + "    if key in self.direct:\n"
+      + "      return self.function(*args, **kwargs)\n"
+      + "    batch = __pyc_batch__\n"
+      + "    if batch.recording:\n"
+      + "      return self.nested(key, args, kwargs)\n"
+      + "    if batch.ops:\n"
+      + "      batch.flush()\n"
+      + "    if __pyc_retained__.replay(key):\n"
+      + "      return self.results.get(key)\n"
+      + "    __pyc_batch_install__()\n"
+      + "    enabled = batch.enabled\n"
+      + "    batch.enabled = True\n"
+      + "    batch.recording = True\n"
+      + "    batch.spoiled = False\n"
+      + "    try:\n"
+      + "      result = self.function(*args, **kwargs)\n"
+      + "    finally:\n"
+      + "      batch.enabled = enabled\n"
+      + "      batch.recording = False\n"
+      + "    ops = batch.ops.tobytes()\n"
+      + "    values = batch.args.tobytes()\n"
+      + "    del batch.ops[:]\n"
+      + "    del batch.args[:]\n"
+      + "    self.keep(key, batch.spoiled, ops, values, result)\n"
+      + "    if ops:\n"
+      + "      batch.target.replayCommands(ops, values)\n"
+      + "    return result\n"
+      + "  def nested(self, key, args, kwargs):\n"
+      + "    batch = __pyc_batch__\n"
+      + "    ops = len(batch.ops)\n"
+      + "    values = len(batch.args)\n"
+      + "    spoiled = batch.spoiled\n"
+      + "    batch.spoiled = False\n"
+      + "    try:\n"
+      + "      result = self.function(*args, **kwargs)\n"
+      + "    finally:\n"
+      + "      inner = batch.spoiled\n"
+      + "      batch.spoiled = spoiled or inner\n"
+      + "    self.keep(key, inner, batch.ops[ops:].tobytes(), batch.args[values:].tobytes(), result)\n"
+      + "    return result\n"
+      + "  def keep(self, key, spoiled, ops, values, result):\n"
+      + "    if spoiled:\n"
+      + "      self.direct[key] = True\n"
+      + "      import sys\n"
+      + "      sys.stderr.write('%s draws something that can not be retained and will run every frame\\n' % self.__name__)\n"
+      + "    else:\n"
+      + "      self.results[key] = result\n"
+      + "      __pyc_retained__.store(key, ops, values)\n"
+      + "  def invalidate(self, *args, **kwargs):\n"
+      + "    if args or kwargs:\n"
+      + "      key = self.key(args, kwargs)\n"
+      + "      self.direct.pop(key, None)\n"
+      + "      self.results.pop(key, None)\n"
+      + "      __pyc_retained__.invalidate(key)\n"
+      + "    else:\n"
+      + "      self.direct.clear()\n"
+      + "      self.results.clear()\n"
+      + "      __pyc_retained__.invalidatePrefix(self.prefix)\n"
+      + "def retained(function):\n"
+      + "  return __PycRetained__(function)\n"
+      + "def invalidateRetained(function=None, *args, **kwargs):\n"
+      + "  if function is None:\n"
+      + "    __pyc_retained__.clear()\n"
+      + "  else:\n"
+      + "    function.invalidate(*args, **kwargs)\n";
+
+}
@@ -0,0 +1,96 @@
+package org.pycessing;
+
+public class RingBufferSink implements OutputSink {
+
+  public enum OverflowPolicy {
+    // Keep the most recent output, overwriting the oldest
+    DROP_OLDEST,
+    // Keep what's already buffered and discard new output until drained
+    DROP_NEWEST
+  }
+
+  public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+  private final char[] buffer;
+  private final OverflowPolicy policy;
+  private int start = 0;
+  private int size = 0;
+  private long dropped = 0;
+
+  public RingBufferSink() {
+    this(DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+  }
+
+  public RingBufferSink(int capacity, OverflowPolicy policy) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive. Recieved: " + capacity);
+    }
+    this.buffer = new char[capacity];
+    this.policy = policy;
+  }
+
+  @Override
+  public synchronized void write(String s) {
+    int length = s.length();
+    int from = 0;
+    if (policy == OverflowPolicy.DROP_NEWEST) {
+      int accepted = Math.min(buffer.length - size, length);
+      dropped += length - accepted;
+      length = accepted;
+    } else {
+      if (length > buffer.length) {
+        from = length - buffer.length;
+        dropped += from;
+        length = buffer.length;
+      }
+      int overflow = size + length - buffer.length;
+      if (overflow > 0) {
+        start = (start + overflow) % buffer.length;
+        size -= overflow;
+        dropped += overflow;
+      }
+    }
+    put(s, from, length);
+  }
+
+  private void put(String s, int from, int length) {
+    int end = (start + size) % buffer.length;
+    int first = Math.min(length, buffer.length - end);
+    s.getChars(from, from + first, buffer, end);
+    s.getChars(from + first, from + length, buffer, 0);
+    size += length;
+  }
+
+  // Returns everything buffered and empties the buffer
+  public synchronized String drain() {
+    if (size == 0) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(size);
+    int first = Math.min(size, buffer.length - start);
+    sb.append(buffer, start, first);
+    sb.append(buffer, 0, size - first);
+    start = 0;
+    size = 0;
+    return sb.toString();
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+}
@@ -0,0 +1,74 @@
+package org.pycessing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import jep.JepException;
+import jep.SubInterpreter;
+
+// The process-wide part of Python start-up, done on a daemon thread while the
+// sketch surface is being created: loading the jep native library and
+// initializing CPython, which the first interpreter does, and building the
+// pycessing module and DrawCommandBuffer tables.
+//
+// Nothing sketch-specific is prepared. Each ManagedInterpreter is still a new
+// sub-interpreter created on its animation thread, because a jep interpreter
+// can only be used from the thread that created it.
+public class RuntimeWarmup {
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "Pycessing runtime warm-up");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  private static CompletableFuture<Void> runtime;
+
+  private RuntimeWarmup() {
+  }
+
+  // Only ever done once
+  public static synchronized CompletableFuture<Void> start() {
+    if (runtime == null) {
+      runtime = CompletableFuture.runAsync(RuntimeWarmup::warm, executor);
+    }
+    return runtime;
+  }
+
+  // Blocks until a started warm-up is done. Failures were already logged and
+  // only cost the time they were meant to save, so they aren't rethrown.
+  public static void await() {
+    CompletableFuture<Void> started;
+    synchronized (RuntimeWarmup.class) {
+      started = runtime;
+    }
+    if (started == null) {
+      return;
+    }
+    try {
+      started.join();
+    } catch (CompletionException e) {
+      Log.warn("RuntimeWarmup: failed: {}", e.getCause());
+    }
+  }
+
+  private static void warm() {
+    long start = System.nanoTime();
+    SketchNamespace.moduleSource();
+    DrawCommandBuffer.pythonSource();
+    try (SubInterpreter interpreter = new SubInterpreter(ManagedInterpreter.config())) {
+      interpreter.exec("import sys, array");
+    } catch (JepException | LinkageError e) {
+      Log.warn("RuntimeWarmup: could not start an interpreter: {}", e);
+      return;
+    }
+    Log.debug("RuntimeWarmup: runtime ready in {} ms", (System.nanoTime() - start) / 1000000);
+  }
+
+}
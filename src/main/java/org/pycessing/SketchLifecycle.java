@@ -0,0 +1,110 @@
+package org.pycessing;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Where a sketch is in its life. States only move forward, and moving to a
+// state also counts as reaching every state before it, so a sketch that fails
+// during loading still releases anyone waiting for SETUP or FINISHED. Waiters
+// are woken the moment the state changes rather than polling for it.
+public class SketchLifecycle {
+
+  public enum State {
+    LOADING, SETTINGS, SETUP, RUNNING, DISPOSING, FINISHED
+  }
+
+  public interface Listener {
+    // Runs on the thread that made the change, so it should return quickly
+    void stateChanged(State from, State to);
+  }
+
+  private static final State[] STATES = State.values();
+
+  private final Map<State, CompletableFuture<State>> reached = new EnumMap<State, CompletableFuture<State>>(State.class);
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private volatile State state = State.LOADING;
+
+  public SketchLifecycle() {
+    for (State s : STATES) {
+      reached.put(s, new CompletableFuture<State>());
+    }
+    reached.get(State.LOADING).complete(State.LOADING);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public boolean hasReached(State s) {
+    return state.compareTo(s) >= 0;
+  }
+
+  public boolean isFinished() {
+    return state == State.FINISHED;
+  }
+
+  // Returns false without changing anything if the sketch is already at or
+  // past the state
+  public boolean advance(State to) {
+    State from;
+    synchronized (this) {
+      from = state;
+      if (from.compareTo(to) >= 0) {
+        return false;
+      }
+      state = to;
+    }
+    Log.debug("SketchLifecycle: {} -> {}", from, to);
+    for (Listener listener : listeners) {
+      try {
+        listener.stateChanged(from, to);
+      } catch (RuntimeException e) {
+        Log.error("SketchLifecycle: a listener failed on " + from + " -> " + to, e);
+      }
+    }
+    for (int i = from.ordinal() + 1; i <= to.ordinal(); i++) {
+      reached.get(STATES[i]).complete(to);
+    }
+    return true;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  // Completes with the state the sketch was in when it got to s
+  public CompletableFuture<State> whenReached(State s) {
+    return reached.get(s);
+  }
+
+  public void await(State s) throws InterruptedException {
+    try {
+      reached.get(s).get();
+    } catch (ExecutionException e) {
+      // Never completed exceptionally
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Returns false if the timeout ran out first
+  public boolean await(State s, long timeout, TimeUnit unit) throws InterruptedException {
+    try {
+      reached.get(s).get(timeout, unit);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,489 @@
+package org.pycessing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The settings-phase calls a sketch makes in settings() or setup(): size(),
+// fullScreen(), smooth()/noSmooth() and pixelDensity(). Processing needs these
+// before the surface exists, which is before any Python has run, so they're
+// read from the source instead.
+//
+// The file is memory-mapped and tokenized in a single pass over its bytes.
+// Strings, comments, bracketed continuation lines and keyword arguments are
+// handled the way Python reads them; anything that isn't a literal (size(w, h))
+// is left unset. Results are cached by path, modification time and length, so
+// reading an unchanged sketch again costs a stat.
+public class SketchMetadata {
+
+  public static final int UNSET = -1;
+  // pixelDensity(displayDensity())
+  public static final int DISPLAY_DENSITY = -2;
+
+  private static final ConcurrentHashMap<Path, SketchMetadata> cache = new ConcurrentHashMap<Path, SketchMetadata>();
+
+  private final long modified;
+  private final long length;
+
+  private boolean hasSetup = false;
+  private int width = UNSET;
+  private int height = UNSET;
+  private String renderer = null;
+  private String outputPath = null;
+  private boolean fullScreen = false;
+  private int display = UNSET;
+  private int smooth = UNSET;
+  private int pixelDensity = UNSET;
+
+  private SketchMetadata(long modified, long length) {
+    this.modified = modified;
+    this.length = length;
+  }
+
+  public static SketchMetadata read(Path path) throws IOException {
+    Path key = path.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+    long modified = attributes.lastModifiedTime().toMillis();
+    long length = attributes.size();
+    SketchMetadata cached = cache.get(key);
+    if (cached != null && cached.modified == modified && cached.length == length) {
+      return cached;
+    }
+    SketchMetadata metadata = new SketchMetadata(modified, length);
+    try (FileChannel channel = FileChannel.open(key, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      metadata.parse(new Tokenizer(buffer));
+    }
+    cache.put(key, metadata);
+    Log.debug("SketchMetadata read {}: {}", key, metadata);
+    return metadata;
+  }
+
+  // For sources that aren't files, and tests
+  static SketchMetadata parse(String source) {
+    SketchMetadata metadata = new SketchMetadata(0, source.length());
+    metadata.parse(new Tokenizer(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))));
+    return metadata;
+  }
+
+  static void clearCache() {
+    cache.clear();
+  }
+
+  public boolean hasSetup() {
+    return hasSetup;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  // As written in the sketch, e.g. "P2D", or null
+  public String getRenderer() {
+    return renderer;
+  }
+
+  // The fourth argument to size(), for the PDF/SVG/DXF renderers
+  public String getOutputPath() {
+    return outputPath;
+  }
+
+  public boolean isFullScreen() {
+    return fullScreen;
+  }
+
+  public int getDisplay() {
+    return display;
+  }
+
+  // 0 for noSmooth()
+  public int getSmooth() {
+    return smooth;
+  }
+
+  public int getPixelDensity() {
+    return pixelDensity;
+  }
+
+  @Override
+  public String toString() {
+    return "SketchMetadata[setup=" + hasSetup + ", size=" + width + "x" + height + ", renderer=" + renderer
+        + ", fullScreen=" + fullScreen + ", display=" + display + ", smooth=" + smooth
+        + ", pixelDensity=" + pixelDensity + "]";
+  }
+
+  // Statements anywhere in the body of a top-level settings() or setup() are
+  // looked at; everything else is skipped token by token
+  private void parse(Tokenizer tokens) {
+    boolean inSettings = false;
+    int type;
+    while ((type = tokens.next()) != Tokenizer.END) {
+      if (type == Tokenizer.NEWLINE || !tokens.startsLine) {
+        continue;
+      }
+      if (tokens.indent == 0) {
+        inSettings = false;
+        if (tokens.is("def")) {
+          tokens.next();
+          boolean isSetup = tokens.is("setup");
+          if (isSetup || tokens.is("settings")) {
+            hasSetup |= isSetup;
+            if (tokens.next() == Tokenizer.OP && tokens.is("(") && tokens.next() == Tokenizer.OP && tokens.is(")")
+                && tokens.next() == Tokenizer.OP && tokens.is(":")) {
+              inSettings = true;
+              // A one-line body: def setup(): size(200, 200)
+              if (tokens.next() == Tokenizer.NAME) {
+                statement(tokens);
+              }
+            }
+          }
+        }
+      } else if (inSettings && type == Tokenizer.NAME) {
+        statement(tokens);
+      }
+    }
+  }
+
+  private void statement(Tokenizer tokens) {
+    String name = tokens.text();
+    if (!name.equals("size") && !name.equals("fullScreen") && !name.equals("smooth")
+        && !name.equals("noSmooth") && !name.equals("pixelDensity")) {
+      return;
+    }
+    if (tokens.next() != Tokenizer.OP || !tokens.is("(")) {
+      return;
+    }
+    List<String> args = new ArrayList<String>();
+    Map<String, String> keywords = new HashMap<String, String>();
+    if (!arguments(tokens, args, keywords)) {
+      return;
+    }
+    switch (name) {
+      case "size":
+        width = intValue(argument(args, keywords, 0, "width"), width);
+        height = intValue(argument(args, keywords, 1, "height"), height);
+        renderer = nameValue(argument(args, keywords, 2, "renderer"), renderer);
+        outputPath = nameValue(argument(args, keywords, 3, "path"), outputPath);
+        break;
+      case "fullScreen":
+        fullScreen = true;
+        // fullScreen(display), fullScreen(renderer) or fullScreen(renderer, display)
+        String first = argument(args, keywords, 0, "renderer");
+        if (first != null && (Character.isDigit(first.charAt(0)) || first.equals("SPAN"))) {
+          display = displayValue(first);
+        } else {
+          renderer = nameValue(first, renderer);
+          display = displayValue(argument(args, keywords, 1, "display"));
+        }
+        break;
+      case "smooth":
+        smooth = args.isEmpty() && keywords.isEmpty() ? 1 : intValue(argument(args, keywords, 0, "level"), smooth);
+        break;
+      case "noSmooth":
+        smooth = 0;
+        break;
+      case "pixelDensity":
+        String density = argument(args, keywords, 0, "density");
+        pixelDensity = "displayDensity()".equals(density) ? DISPLAY_DENSITY : intValue(density, pixelDensity);
+        break;
+    }
+  }
+
+  // Reads up to the closing bracket, joining each argument's tokens back into
+  // text. Returns false if the file ends first.
+  private static boolean arguments(Tokenizer tokens, List<String> args, Map<String, String> keywords) {
+    int depth = tokens.depth;
+    StringBuilder arg = new StringBuilder();
+    String keyword = null;
+    int count = 0;
+    int type;
+    while ((type = tokens.next()) != Tokenizer.END) {
+      if (type == Tokenizer.NEWLINE) {
+        return false;
+      }
+      boolean top = tokens.depth == depth - 1 || (tokens.depth == depth && type == Tokenizer.OP && tokens.is(","));
+      if (top) {
+        if (count > 0) {
+          if (keyword == null) {
+            args.add(arg.toString());
+          } else {
+            keywords.put(keyword, arg.toString());
+          }
+        }
+        if (tokens.depth == depth - 1) {
+          return true;
+        }
+        arg.setLength(0);
+        keyword = null;
+        count = 0;
+        continue;
+      }
+      if (tokens.depth == depth && count == 1 && keyword == null && type == Tokenizer.OP && tokens.is("=")) {
+        keyword = arg.toString();
+        arg.setLength(0);
+        count = 0;
+        continue;
+      }
+      arg.append(tokens.text());
+      count++;
+    }
+    return false;
+  }
+
+  private static String argument(List<String> args, Map<String, String> keywords, int index, String keyword) {
+    if (index < args.size()) {
+      return args.get(index);
+    }
+    return keywords.get(keyword);
+  }
+
+  private static int intValue(String value, int fallback) {
+    if (value == null) {
+      return fallback;
+    }
+    try {
+      return Integer.parseInt(value.replace("_", ""));
+    } catch (NumberFormatException e) {
+      return fallback;
+    }
+  }
+
+  private static int displayValue(String value) {
+    if ("SPAN".equals(value)) {
+      return 0;
+    }
+    return intValue(value, UNSET);
+  }
+
+  // A constant such as P2D, or a string literal with its quotes removed
+  private static String nameValue(String value, String fallback) {
+    if (value == null || value.isEmpty()) {
+      return fallback;
+    }
+    char quote = value.charAt(value.length() - 1);
+    if (quote == '\'' || quote == '"') {
+      int start = value.indexOf(quote);
+      return value.substring(start + 1, value.length() - 1);
+    }
+    return value;
+  }
+
+  // Just enough of Python's tokenizer to find statements: names, numbers,
+  // strings, single-character operators, and logical line ends. Lines inside
+  // brackets or ending in a backslash are joined, and blank or comment-only
+  // lines are skipped. Works on UTF-8 bytes directly; every byte of a
+  // multi-byte character counts as part of a name.
+  static final class Tokenizer {
+    static final int END = 0;
+    static final int NAME = 1;
+    static final int NUMBER = 2;
+    static final int STRING = 3;
+    static final int OP = 4;
+    static final int NEWLINE = 5;
+
+    private final ByteBuffer source;
+    private final int limit;
+    private int pos = 0;
+    private boolean atLineStart = true;
+
+    int start;
+    int end;
+    int depth = 0;
+    // Whether the current token is the first of a logical line, and that
+    // line's indentation
+    boolean startsLine;
+    int indent;
+
+    Tokenizer(ByteBuffer source) {
+      this.source = source;
+      this.limit = source.limit();
+      // Skip a UTF-8 byte order mark
+      if (limit >= 3 && at(0) == 0xEF && at(1) == 0xBB && at(2) == 0xBF) {
+        pos = 3;
+      }
+    }
+
+    private int at(int i) {
+      return source.get(i) & 0xFF;
+    }
+
+    int next() {
+      startsLine = false;
+      while (true) {
+        if (atLineStart && depth == 0) {
+          int column = 0;
+          while (pos < limit && (at(pos) == ' ' || at(pos) == '\t' || at(pos) == '\f')) {
+            column = at(pos) == '\t' ? (column / 8 + 1) * 8 : column + 1;
+            pos++;
+          }
+          if (pos >= limit) {
+            return END;
+          }
+          int c = at(pos);
+          if (c == '#' || c == '\n' || c == '\r') {
+            skipLine();
+            continue;
+          }
+          atLineStart = false;
+          startsLine = true;
+          indent = column;
+        }
+        if (pos >= limit) {
+          return END;
+        }
+        int c = at(pos);
+        if (c == ' ' || c == '\t' || c == '\f') {
+          pos++;
+        } else if (c == '#') {
+          while (pos < limit && at(pos) != '\n' && at(pos) != '\r') {
+            pos++;
+          }
+        } else if (c == '\\' && pos + 1 < limit && (at(pos + 1) == '\n' || at(pos + 1) == '\r')) {
+          pos++;
+          skipNewline();
+        } else if (c == '\n' || c == '\r') {
+          skipNewline();
+          if (depth == 0) {
+            atLineStart = true;
+            start = end = pos;
+            return NEWLINE;
+          }
+        } else {
+          return token(c);
+        }
+      }
+    }
+
+    private int token(int c) {
+      start = pos;
+      if (c == '\'' || c == '"') {
+        string(c);
+        return STRING;
+      }
+      if (c >= '0' && c <= '9' || (c == '.' && pos + 1 < limit && at(pos + 1) >= '0' && at(pos + 1) <= '9')) {
+        pos++;
+        while (pos < limit) {
+          int d = at(pos);
+          if (isNameByte(d) || d == '.') {
+            pos++;
+          } else if ((d == '+' || d == '-') && (at(pos - 1) == 'e' || at(pos - 1) == 'E') && at(start + 1) != 'x'
+              && at(start + 1) != 'X') {
+            pos++;
+          } else {
+            break;
+          }
+        }
+        end = pos;
+        return NUMBER;
+      }
+      if (isNameByte(c)) {
+        while (pos < limit && isNameByte(at(pos))) {
+          pos++;
+        }
+        // String prefixes: r'', b"", f'''...''' and so on
+        if (pos < limit && (at(pos) == '\'' || at(pos) == '"') && pos - start <= 2 && isStringPrefix(start, pos)) {
+          string(at(pos));
+          return STRING;
+        }
+        end = pos;
+        return NAME;
+      }
+      pos++;
+      if (c == '(' || c == '[' || c == '{') {
+        depth++;
+      } else if ((c == ')' || c == ']' || c == '}') && depth > 0) {
+        depth--;
+      } else if (c == '=' && pos < limit && at(pos) == '=') {
+        pos++;
+      }
+      end = pos;
+      return OP;
+    }
+
+    private void string(int quote) {
+      boolean triple = pos + 2 < limit && at(pos + 1) == quote && at(pos + 2) == quote;
+      pos += triple ? 3 : 1;
+      while (pos < limit) {
+        int c = at(pos);
+        if (c == '\\') {
+          pos += 2;
+        } else if (c == quote && (!triple || (pos + 2 < limit && at(pos + 1) == quote && at(pos + 2) == quote))) {
+          pos += triple ? 3 : 1;
+          break;
+        } else if (!triple && (c == '\n' || c == '\r')) {
+          // Unterminated; let the line end normally
+          break;
+        } else {
+          pos++;
+        }
+      }
+      pos = Math.min(pos, limit);
+      end = pos;
+    }
+
+    private boolean isStringPrefix(int from, int to) {
+      for (int i = from; i < to; i++) {
+        if ("rRbBuUfF".indexOf(at(i)) < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean isNameByte(int c) {
+      return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c >= 0x80;
+    }
+
+    private void skipLine() {
+      while (pos < limit && at(pos) != '\n' && at(pos) != '\r') {
+        pos++;
+      }
+      skipNewline();
+    }
+
+    private void skipNewline() {
+      if (pos < limit && at(pos) == '\r') {
+        pos++;
+      }
+      if (pos < limit && at(pos) == '\n') {
+        pos++;
+      }
+    }
+
+    boolean is(String text) {
+      if (end - start != text.length()) {
+        return false;
+      }
+      for (int i = 0; i < text.length(); i++) {
+        if (at(start + i) != text.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String text() {
+      byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = source.get(start + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+}
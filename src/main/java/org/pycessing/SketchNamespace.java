@@ -0,0 +1,107 @@
+package org.pycessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// The names every sketch gets in its globals: the public PApplet methods, bound
+// to PAppletMain, and the PConstants values. They come from the pycessing
+// module that BindingGenerator writes at build time, which each interpreter
+// execs and registers, so sketch modules can import pycessing too. Only when
+// the classes weren't built by Maven is it generated by reflection, once per
+// JVM. The Java tables are built by reflection when they're first asked for.
+public class SketchNamespace {
+
+  public static final String MODULE = "pycessing";
+  static final String RESOURCE = MODULE + ".py";
+
+  // Defined once per interpreter. Runs the module source as pycessing, binds it
+  // to target and copies everything it exports into globals in one pass. The
+  // copy puts PApplet.exec in globals, so the builtin is called by its module.
+  static final String BIND_SOURCE = "def __pycessing_bind__(target, source):\n"
+      + "  import builtins, sys, types\n"
+      + "  module = types.ModuleType('" + MODULE + "')\n"
+      + "  module.__file__ = '<" + MODULE + ">'\n"
+      + "  builtins.exec(compile(source, '<" + MODULE + ">', 'exec'), module.__dict__)\n"
+      + "  module.__bind__(target)\n"
+      + "  sys.modules['" + MODULE + "'] = module\n"
+      + "  g = globals()\n"
+      + "  for name in module.__all__:\n"
+      + "    g[name] = getattr(module, name)\n"
+      + "  g['__pyc_api_names__'] = module.API_NAMES\n";
+
+  private static volatile String moduleSource;
+
+  private static final class Tables {
+    static final String[] API_NAMES = BindingGenerator.apiNames();
+    static final String[] DRAWING_NAMES = BindingGenerator.drawingNames(BindingGenerator.graphicsNames(API_NAMES));
+    static final String[] CONSTANT_NAMES;
+    static final Object[] CONSTANT_VALUES;
+
+    static {
+      ArrayList<String> names = new ArrayList<String>();
+      ArrayList<Object> values = new ArrayList<Object>();
+      BindingGenerator.constants(names, values);
+      CONSTANT_NAMES = names.toArray(new String[names.size()]);
+      CONSTANT_VALUES = values.toArray();
+    }
+  }
+
+  // The generated module's source
+  static String moduleSource() {
+    String source = moduleSource;
+    if (source == null) {
+      synchronized (SketchNamespace.class) {
+        source = moduleSource;
+        if (source == null) {
+          source = moduleSource = loadModuleSource();
+        }
+      }
+    }
+    return source;
+  }
+
+  private static String loadModuleSource() {
+    InputStream in = SketchNamespace.class.getResourceAsStream(RESOURCE);
+    if (in != null) {
+      try (InputStream module = in) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        for (int n = module.read(buffer); n != -1; n = module.read(buffer)) {
+          bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        Log.warn("SketchNamespace: could not read {}, generating it: {}", RESOURCE, e);
+      }
+    } else {
+      Log.debug("SketchNamespace: no prebuilt {}, generating it", RESOURCE);
+    }
+    return BindingGenerator.generate();
+  }
+
+  public static String[] getApiNames() {
+    return Arrays.copyOf(Tables.API_NAMES, Tables.API_NAMES.length);
+  }
+
+  public static String[] getDrawingNames() {
+    return Arrays.copyOf(Tables.DRAWING_NAMES, Tables.DRAWING_NAMES.length);
+  }
+
+  public static String[] getConstantNames() {
+    return Arrays.copyOf(Tables.CONSTANT_NAMES, Tables.CONSTANT_NAMES.length);
+  }
+
+  public static Object[] getConstantValues() {
+    return Arrays.copyOf(Tables.CONSTANT_VALUES, Tables.CONSTANT_VALUES.length);
+  }
+
+  // Arguments for __pycessing_bind__
+  static Object[] bindArguments(PAppletConnector target) {
+    return new Object[] { target, moduleSource() };
+  }
+
+}
@@ -0,0 +1,60 @@
+package org.pycessing;
+
+import java.nio.file.Path;
+
+// What SketchRunner reports for one sketch
+public class SketchResult {
+
+  private final Path script;
+  private final int framesDrawn;
+  private final String output;
+  private final String error;
+  private final Throwable failure;
+  private final long elapsedNanos;
+
+  public SketchResult(Path script, int framesDrawn, String output, String error, Throwable failure, long elapsedNanos) {
+    this.script = script;
+    this.framesDrawn = framesDrawn;
+    this.output = output;
+    this.error = error;
+    this.failure = failure;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public Path getScript() {
+    return script;
+  }
+
+  public int getFramesDrawn() {
+    return framesDrawn;
+  }
+
+  // Everything the sketch printed, up to the capture buffer's size
+  public String getOutput() {
+    return output;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  // Null if the sketch ran to completion
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  public boolean succeeded() {
+    return failure == null;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return script + ": " + (succeeded() ? framesDrawn + " frames" : "failed with " + failure)
+        + " in " + (elapsedNanos / 1000000) + " ms";
+  }
+
+}
@@ -0,0 +1,116 @@
+package org.pycessing;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Runs many sketches headless in one JVM. Every sketch gets its own
+// PAppletConnector and ManagedInterpreter, created, run and closed on one pool
+// thread, since a jep sub-interpreter can only be used from the thread that
+// made it. At most threads sketches run at once; the rest wait their turn.
+//
+// jep's sub-interpreters share CPython's one GIL, so only one sketch runs
+// Python at a time. Their draw() calls take turns, and what runs in parallel
+// is the Java side: Processing's JAVA2D rendering and saving frames. A thread
+// per core only pays off for sketches that spend most of a frame in Java, so
+// defaultThreads() is half the cores unless -Dpycessing.runner.threads says
+// otherwise.
+public class SketchRunner implements AutoCloseable {
+
+  public static final String THREADS_PROPERTY = "pycessing.runner.threads";
+
+  private final ExecutorService executor;
+  private final Supplier<PAppletConnector> connectors;
+  private final int outputCapacity;
+
+  public SketchRunner(int threads) {
+    this(threads, RingBufferSink.DEFAULT_CAPACITY);
+  }
+
+  public SketchRunner(int threads, int outputCapacity) {
+    this(threads, outputCapacity, PAppletConnector::new);
+  }
+
+  SketchRunner(int threads, int outputCapacity, Supplier<PAppletConnector> connectors) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+    }
+    this.connectors = connectors;
+    this.outputCapacity = outputCapacity;
+    final AtomicInteger count = new AtomicInteger();
+    executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), r -> {
+          Thread t = new Thread(r, "Pycessing sketch " + count.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  public static int defaultThreads() {
+    return Integer.getInteger(THREADS_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  // Same arguments as PAppletConnector.runHeadless
+  public Future<SketchResult> submit(Path script, int frames, Path out) {
+    return executor.submit(() -> run(script, frames, out));
+  }
+
+  // Runs every script, each writing its frames to outDirectory/<script name>,
+  // and waits for all of them. Results are in the order of scripts.
+  public List<SketchResult> runAll(List<Path> scripts, int frames, Path outDirectory) throws InterruptedException {
+    List<Future<SketchResult>> futures = new ArrayList<Future<SketchResult>>();
+    for (Path script : scripts) {
+      Path out = null;
+      if (outDirectory != null) {
+        String name = script.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        out = outDirectory.resolve(dot > 0 ? name.substring(0, dot) : name);
+      }
+      futures.add(submit(script, frames, out));
+    }
+    List<SketchResult> results = new ArrayList<SketchResult>();
+    for (Future<SketchResult> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        // run() reports failures in the result, so this is a bug in the runner
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+    return results;
+  }
+
+  private SketchResult run(Path script, int frames, Path out) {
+    long start = System.nanoTime();
+    RingBufferSink output = new RingBufferSink(outputCapacity, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    RingBufferSink error = new RingBufferSink(outputCapacity, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    int drawn = 0;
+    Throwable failure = null;
+    try {
+      PAppletConnector connector = connectors.get();
+      connector.setOutputSinks(output, error);
+      connector.loadFile(script.toString());
+      drawn = connector.runHeadless(frames, out);
+    } catch (Exception e) {
+      failure = e;
+    }
+    SketchResult result = new SketchResult(script, drawn, output.drain(), error.drain(), failure, System.nanoTime() - start);
+    Log.debug("SketchRunner: {}", result);
+    return result;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+
+}
@@ -0,0 +1,100 @@
+package org.pycessing;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Watches a sketch's folder, and the packages in it, for changes to Python
+// files. The watching happens on its own daemon thread; the animation thread
+// asks pollChange() between frames and reloads when it says so, so a reload
+// never lands in the middle of a frame.
+public class SketchWatcher implements Closeable {
+
+  // Editors often save in several steps (truncate, write, rename), so wait for
+  // the folder to go quiet before reporting
+  static final long SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private final Path directory;
+  private final WatchService service;
+  private final Thread thread;
+  private final AtomicBoolean changed = new AtomicBoolean(false);
+  private volatile long lastChange = 0;
+
+  public SketchWatcher(Path sketch) throws IOException {
+    directory = sketch.toAbsolutePath().getParent();
+    service = directory.getFileSystem().newWatchService();
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+        if (!dir.equals(directory) && (name.startsWith(".") || name.equals("__pycache__"))) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        dir.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    thread = new Thread(this::watch, "Pycessing sketch watcher");
+    thread.setDaemon(true);
+    thread.start();
+    Log.debug("SketchWatcher watching {}", directory);
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW || isPythonFile(event.context())) {
+            lastChange = System.nanoTime();
+            changed.set(true);
+          }
+        }
+        key.reset();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Closed
+    }
+  }
+
+  private static boolean isPythonFile(Object context) {
+    return context instanceof Path && ((Path) context).getFileName().toString().endsWith(".py");
+  }
+
+  // True once for each burst of changes, once it has settled
+  public boolean pollChange() {
+    if (!changed.get() || System.nanoTime() - lastChange < SETTLE_NANOS) {
+      return false;
+    }
+    return changed.compareAndSet(true, false);
+  }
+
+  @Override
+  public void close() {
+    try {
+      service.close();
+    } catch (IOException e) {
+      Log.error("SketchWatcher: could not close the watch service", e);
+    }
+    thread.interrupt();
+  }
+
+}
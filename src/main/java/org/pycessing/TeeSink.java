@@ -0,0 +1,36 @@
+package org.pycessing;
+
+public class TeeSink implements OutputSink {
+
+  private final OutputSink[] sinks;
+
+  public TeeSink(OutputSink... sinks) {
+    this.sinks = sinks;
+  }
+
+  public OutputSink[] getSinks() {
+    return sinks;
+  }
+
+  @Override
+  public void write(String s) {
+    for (OutputSink sink : sinks) {
+      sink.write(s);
+    }
+  }
+
+  @Override
+  public void flush() {
+    for (OutputSink sink : sinks) {
+      sink.flush();
+    }
+  }
+
+  @Override
+  public void close() {
+    for (OutputSink sink : sinks) {
+      sink.close();
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import processing.core.PApplet;
+
+public class BatchPrimitivesTest {
+
+  private PApplet applet;
+  private BatchPrimitives primitives;
+
+  private static byte[] floats(float... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+    buffer.asFloatBuffer().put(values);
+    return buffer.array();
+  }
+
+  @BeforeEach
+  void setUp() {
+    applet = Mockito.mock(PApplet.class);
+    primitives = new BatchPrimitives(applet);
+  }
+
+  @Test
+  public void testPointsAndLines() {
+    primitives.points(floats(1, 2, 3, 4), 2);
+    primitives.points(floats(1, 2, 3), 3);
+    primitives.lines(floats(0, 0, 10, 10, 5, 5, 6, 6), 4);
+    Mockito.verify(applet).point(1, 2);
+    Mockito.verify(applet).point(3, 4);
+    Mockito.verify(applet).point(1, 2, 3);
+    Mockito.verify(applet).line(0, 0, 10, 10);
+    Mockito.verify(applet).line(5, 5, 6, 6);
+  }
+
+  @Test
+  public void testEllipsesAndRects() {
+    primitives.ellipses(floats(1, 2, 3, 4), 4);
+    primitives.rects(floats(5, 6, 7, 8, 9, 10, 11, 12), 4);
+    Mockito.verify(applet).ellipse(1, 2, 3, 4);
+    Mockito.verify(applet).rect(5, 6, 7, 8);
+    Mockito.verify(applet).rect(9, 10, 11, 12);
+  }
+
+  @Test
+  public void testVertices() {
+    primitives.vertices(floats(0, 0, 10, 0, 10, 10), 2, -1, true);
+    primitives.vertices(floats(1, 2, 3), 3, PApplet.POINTS, false);
+    InOrder order = Mockito.inOrder(applet);
+    order.verify(applet).beginShape();
+    order.verify(applet).vertex(0, 0);
+    order.verify(applet).vertex(10, 0);
+    order.verify(applet).vertex(10, 10);
+    order.verify(applet).endShape(PApplet.CLOSE);
+    order.verify(applet).beginShape(PApplet.POINTS);
+    order.verify(applet).vertex(1, 2, 3);
+    order.verify(applet).endShape();
+  }
+
+  @Test
+  public void testBadShapes() {
+    assertThrows(IllegalArgumentException.class, () -> primitives.ellipses(floats(1, 2), 2));
+    assertThrows(IllegalArgumentException.class, () -> primitives.points(floats(1, 2, 3), 2));
+    Mockito.verifyNoInteractions(applet);
+  }
+
+}
@@ -0,0 +1,67 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import processing.core.PConstants;
+
+class BindingGeneratorTest {
+
+  @TempDir
+  File testDir;
+
+  @Test
+  void testLiterals() {
+    assertEquals("3", BindingGenerator.literal(3));
+    assertEquals("3.1415927410125732", BindingGenerator.literal(PConstants.PI));
+    assertEquals("float('Infinity')", BindingGenerator.literal(Float.POSITIVE_INFINITY));
+    assertEquals("True", BindingGenerator.literal(true));
+    assertEquals("'\\u001b'", BindingGenerator.literal(PConstants.ESC));
+    assertEquals("'it\\'s \\\\'", BindingGenerator.literal("it's \\"));
+    assertEquals("('a','b',)", BindingGenerator.literal(new String[] {"a", "b"}));
+    assertThrows(IllegalArgumentException.class, () -> BindingGenerator.literal(new Object()));
+  }
+
+  @Test
+  void testGraphicsNames() {
+    List<String> graphics = Arrays.asList(BindingGenerator.graphicsNames(BindingGenerator.apiNames()));
+    List<String> drawing = Arrays.asList(BindingGenerator.drawingNames(graphics.toArray(new String[0])));
+    assertTrue(graphics.contains("ellipse"));
+    assertTrue(graphics.contains("color"));
+    assertTrue(graphics.contains("screenX"));
+    assertFalse(graphics.contains("random"));
+    assertTrue(drawing.contains("ellipse"));
+    assertFalse(drawing.contains("color"));
+    assertTrue(graphics.containsAll(drawing));
+  }
+
+  @Test
+  void testGenerate() {
+    String source = BindingGenerator.generate();
+    assertTrue(source.contains("\nPI = 3.1415927410125732\n"));
+    assertTrue(source.contains("\nJAVA2D = '" + PConstants.JAVA2D + "'\n"));
+    assertTrue(source.contains("\n" + FrameState.FRAME_COUNT + " = 0\n"));
+    assertTrue(source.contains("'ellipse',"));
+    assertTrue(source.contains("\nGRAPHICS_NAMES = ("));
+    assertFalse(source.contains("'" + ManagedInterpreter.SETUP + "',"));
+    assertTrue(source.endsWith("__all__ = ('PAppletMain',) + API_NAMES + CONSTANT_NAMES\n"));
+  }
+
+  @Test
+  void testMainWritesTheResource() throws IOException {
+    BindingGenerator.main(new String[] {testDir.getAbsolutePath()});
+    Path module = testDir.toPath().resolve("org/pycessing/" + SketchNamespace.RESOURCE);
+    assertEquals(BindingGenerator.generate(), new String(Files.readAllBytes(module), StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,45 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class BytecodeCacheTest {
+
+  // The build points it away from the home directory for the whole run
+  private final String previous = System.getProperty(BytecodeCache.DIRECTORY_PROPERTY);
+
+  @AfterEach
+  void tearDown() {
+    if (previous == null) {
+      System.clearProperty(BytecodeCache.DIRECTORY_PROPERTY);
+    } else {
+      System.setProperty(BytecodeCache.DIRECTORY_PROPERTY, previous);
+    }
+  }
+
+  @Test
+  public void testDefaultDirectory() {
+    System.clearProperty(BytecodeCache.DIRECTORY_PROPERTY);
+    assertEquals(Paths.get(System.getProperty("user.home"), ".pycessing", "bytecode"), BytecodeCache.getDirectory());
+  }
+
+  @Test
+  public void testDirectoryProperty() {
+    System.setProperty(BytecodeCache.DIRECTORY_PROPERTY, "/tmp/sketch-cache");
+    assertEquals(Paths.get("/tmp/sketch-cache"), BytecodeCache.getDirectory());
+    System.setProperty(BytecodeCache.DIRECTORY_PROPERTY, "OFF");
+    assertNull(BytecodeCache.getDirectory());
+    System.setProperty(BytecodeCache.DIRECTORY_PROPERTY, " ");
+    assertNull(BytecodeCache.getDirectory());
+  }
+
+  @Test
+  public void testPythonSource() {
+    assertTrue(BytecodeCache.pythonSource().contains("def __pycessing_run_cached__(path, directory):"));
+  }
+
+}
@@ -0,0 +1,98 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+
+class DrawCommandBufferTest {
+
+  private PApplet applet;
+  private ByteBuffer ops;
+  private ByteBuffer args;
+
+  private void record(int op, float... values) {
+    ops.putInt(op);
+    for (float v : values) {
+      args.putFloat(v);
+    }
+  }
+
+  private void replay() {
+    byte[] o = new byte[ops.position()];
+    byte[] a = new byte[args.position()];
+    ops.flip();
+    args.flip();
+    ops.get(o);
+    args.get(a);
+    DrawCommandBuffer.replay(applet, o, a);
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    applet = mock(PApplet.class);
+    ops = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+    args = ByteBuffer.allocate(4096).order(ByteOrder.nativeOrder());
+  }
+
+  @Test
+  void testReplayInOrder() {
+    record(DrawCommandBuffer.FILL_3, 255, 0, 0);
+    record(DrawCommandBuffer.NO_STROKE_0);
+    record(DrawCommandBuffer.ELLIPSE_4, 10, 20, 30, 40);
+    record(DrawCommandBuffer.PUSH_MATRIX_0);
+    record(DrawCommandBuffer.TRANSLATE_2, 5, 6);
+    record(DrawCommandBuffer.RECT_5, 1, 2, 3, 4, 0.5f);
+    record(DrawCommandBuffer.POP_MATRIX_0);
+    replay();
+
+    InOrder inOrder = inOrder(applet);
+    inOrder.verify(applet).fill(255f, 0f, 0f);
+    inOrder.verify(applet).noStroke();
+    inOrder.verify(applet).ellipse(10f, 20f, 30f, 40f);
+    inOrder.verify(applet).pushMatrix();
+    inOrder.verify(applet).translate(5f, 6f);
+    inOrder.verify(applet).rect(1f, 2f, 3f, 4f, 0.5f);
+    inOrder.verify(applet).popMatrix();
+    verifyNoMoreInteractions(applet);
+  }
+
+  @Test
+  void testIntArguments() {
+    record(DrawCommandBuffer.BEGIN_SHAPE_1, PConstants.TRIANGLES);
+    record(DrawCommandBuffer.VERTEX_2, 0, 0);
+    record(DrawCommandBuffer.END_SHAPE_1, PConstants.CLOSE);
+    record(DrawCommandBuffer.ARC_7, 0, 0, 10, 10, 0, 1, PConstants.PIE);
+    replay();
+
+    verify(applet).beginShape(PConstants.TRIANGLES);
+    verify(applet).vertex(0f, 0f);
+    verify(applet).endShape(PConstants.CLOSE);
+    verify(applet).arc(0f, 0f, 10f, 10f, 0f, 1f, PConstants.PIE);
+  }
+
+  @Test
+  void testUnknownOpcode() {
+    record(1000);
+    assertThrows(IllegalArgumentException.class, () -> replay());
+  }
+
+  @Test
+  void testOpcodeTable() {
+    assertTrue(DrawCommandBuffer.isRecorded("ellipse"));
+    assertFalse(DrawCommandBuffer.isRecorded("text"));
+    assertEquals(4, DrawCommandBuffer.getArity(DrawCommandBuffer.ELLIPSE_4));
+    String table = DrawCommandBuffer.opcodeTable();
+    assertTrue(table.contains("'fill': ({1: 23, 2: 24, 3: 25, 4: 26, }, (1, 2, ))"), table);
+    assertTrue(table.contains("'noFill': ({0: 27, }, ())"), table);
+  }
+
+}
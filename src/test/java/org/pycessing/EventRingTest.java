@@ -0,0 +1,70 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+public class EventRingTest {
+
+  @Test
+  public void testOrderAndCapacity() {
+    EventRing<Integer> ring = new EventRing<Integer>(3);
+    assertEquals(4, ring.capacity());
+    assertTrue(ring.isEmpty());
+    assertNull(ring.poll());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(ring.offer(i));
+    }
+    assertFalse(ring.offer(4));
+    assertEquals(0, (int) ring.poll());
+    assertTrue(ring.offer(4));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(i, (int) ring.poll());
+    }
+    assertTrue(ring.isEmpty());
+  }
+
+  @Test
+  @Timeout(30)
+  public void testManyProducers() throws InterruptedException {
+    final int producers = 4;
+    final int each = 20000;
+    EventRing<int[]> ring = new EventRing<int[]>(64);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      Thread t = new Thread(() -> {
+        for (int i = 0; i < each; i++) {
+          int[] item = new int[] { producer, i };
+          while (!ring.offer(item)) {
+            Thread.yield();
+          }
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+    int[] next = new int[producers];
+    int received = 0;
+    while (received < producers * each) {
+      int[] item = ring.poll();
+      if (item == null) {
+        Thread.yield();
+        continue;
+      }
+      // Each producer's items arrive in the order it sent them
+      assertEquals(next[item[0]], item[1]);
+      next[item[0]]++;
+      received++;
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(ring.poll());
+  }
+
+}
@@ -0,0 +1,118 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class FrameMetricsTest {
+
+  private static final long MS = 1000000;
+
+  @Test
+  void testBuckets() {
+    for (long v : new long[] { 0, 1, 7, 8, 15, 16, 1000, 123456789, 1L << 40 }) {
+      int bucket = PhaseHistogram.bucketOf(v);
+      assertTrue(PhaseHistogram.lowerBound(bucket) <= v, "lower bound of " + v);
+      if (bucket + 1 < PhaseHistogram.BUCKETS) {
+        assertTrue(PhaseHistogram.lowerBound(bucket + 1) > v, "upper bound of " + v);
+      }
+    }
+    assertEquals(PhaseHistogram.BUCKETS - 1, PhaseHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  void testPercentiles() {
+    PhaseHistogram h = new PhaseHistogram();
+    assertEquals(0, h.getPercentile(50));
+    for (int i = 1; i <= 100; i++) {
+      h.record(i * MS);
+    }
+    assertEquals(100, h.getCount());
+    assertEquals(100 * MS, h.getMax());
+    assertEquals(50.5 * MS, h.getMean(), 1);
+    // Within the 12.5% bucket resolution
+    assertEquals(50 * MS, h.getPercentile(50), 50 * MS / 8);
+    assertEquals(99 * MS, h.getPercentile(99), 99 * MS / 8);
+    assertEquals(100 * MS, h.getPercentile(100));
+    h.reset();
+    assertEquals(0, h.getCount());
+    assertEquals(0, h.getMax());
+  }
+
+  @Test
+  void testPhases() {
+    FrameMetrics metrics = new FrameMetrics();
+    metrics.beginFrame(1000 * MS);
+    metrics.add(FrameMetrics.Phase.INTERPRETER, 4 * MS);
+    metrics.add(FrameMetrics.Phase.INTERPRETER, 2 * MS);
+    metrics.add(FrameMetrics.Phase.CAPTURE, 1 * MS);
+    metrics.endFrame(1010 * MS);
+
+    assertEquals(1, metrics.getFrameCount());
+    assertEquals(6 * MS, metrics.getPhaseTimes(FrameMetrics.Phase.INTERPRETER).getMax());
+    assertEquals(3 * MS, metrics.getPhaseTimes(FrameMetrics.Phase.RENDER).getMax());
+    assertEquals(0, metrics.getPhaseTimes(FrameMetrics.Phase.EVENTS).getMax());
+    assertEquals(10.0, metrics.getFrameTimeMax(), 0.001);
+    assertTrue(metrics.getSummary().startsWith("frames=1 dropped=0"));
+  }
+
+  @Test
+  void testDroppedFrames() {
+    FrameMetrics metrics = new FrameMetrics();
+    metrics.setTargetFrameRate(100);
+    metrics.beginFrame(10 * MS);
+    metrics.endFrame(11 * MS);
+    metrics.beginFrame(20 * MS);
+    metrics.endFrame(21 * MS);
+    assertEquals(0, metrics.getDroppedFrames());
+    // Three periods later, so two frames were missed
+    metrics.beginFrame(50 * MS);
+    metrics.endFrame(51 * MS);
+    assertEquals(2, metrics.getDroppedFrames());
+    // Cleared by the animation thread when the next frame begins
+    metrics.reset();
+    assertEquals(2, metrics.getDroppedFrames());
+    metrics.beginFrame(100 * MS);
+    metrics.endFrame(101 * MS);
+    assertEquals(0, metrics.getDroppedFrames());
+    assertEquals(1, metrics.getFrameCount());
+  }
+
+  @Test
+  void testSkippedFrames() {
+    FrameMetrics metrics = new FrameMetrics();
+    metrics.setTargetFrameRate(100);
+    metrics.beginFrame(10 * MS);
+    metrics.endFrame(11 * MS);
+    // Passes after noLoop() are neither frames nor dropped frames
+    metrics.skipFrame();
+    metrics.endFrame(21 * MS);
+    metrics.skipFrame();
+    metrics.endFrame(31 * MS);
+    assertEquals(1, metrics.getFrameCount());
+    metrics.beginFrame(100 * MS);
+    metrics.endFrame(101 * MS);
+    assertEquals(2, metrics.getFrameCount());
+    assertEquals(0, metrics.getDroppedFrames());
+  }
+
+  @Test
+  void testMXBean() throws Exception {
+    FrameMetrics metrics = new FrameMetrics();
+    metrics.start("test");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.pycessing:type=FrameMetrics,name=" + ObjectName.quote("test"));
+      assertTrue(server.isRegistered(name));
+      assertEquals(0L, server.getAttribute(name, "FrameCount"));
+    } finally {
+      metrics.stop();
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import processing.core.PApplet;
+
+class FramePipelineTest {
+
+  private PApplet applet;
+  private FramePipeline pipeline;
+
+  private static byte[] ints(int... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+    buffer.asIntBuffer().put(values);
+    return buffer.array();
+  }
+
+  private static byte[] floats(float... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+    buffer.asFloatBuffer().put(values);
+    return buffer.array();
+  }
+
+  @BeforeEach
+  void setUp() {
+    applet = mock(PApplet.class);
+    pipeline = new FramePipeline(applet);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pipeline.close();
+  }
+
+  @Test
+  @Timeout(10)
+  void testRecordedFrame() {
+    assertNull(pipeline.awaitFrame());
+    pipeline.produce(() -> {
+      assertTrue(pipeline.isPythonThread());
+      assertTrue(pipeline.defer(ints(DrawCommandBuffer.LINE_4), floats(0, 0, 10, 10)));
+      assertTrue(pipeline.defer(ints(DrawCommandBuffer.POINT_2), floats(5, 5)));
+      return null;
+    });
+    assertTrue(pipeline.hasPendingFrame());
+    FramePipeline.CommandList frame = pipeline.awaitFrame();
+    assertFalse(pipeline.hasPendingFrame());
+    // Nothing is drawn until the animation thread replays it
+    verifyNoInteractions(applet);
+    assertEquals(2, frame.size());
+    frame.replay(applet);
+    verify(applet).line(0f, 0f, 10f, 10f);
+    verify(applet).point(5f, 5f);
+    // Not on the Python thread
+    assertFalse(pipeline.defer(ints(DrawCommandBuffer.POINT_2), floats(1, 1)));
+  }
+
+  @Test
+  @Timeout(10)
+  void testDirectWaitsForAnimationThread() throws Exception {
+    CountDownLatch recorded = new CountDownLatch(1);
+    pipeline.produce(() -> {
+      pipeline.defer(ints(DrawCommandBuffer.POINT_2), floats(1, 2));
+      recorded.countDown();
+      pipeline.beginDirect();
+      // In lockstep now, so later calls draw straight away
+      assertFalse(pipeline.defer(ints(DrawCommandBuffer.POINT_2), floats(3, 4)));
+      return null;
+    });
+    assertTrue(recorded.await(5, TimeUnit.SECONDS));
+    Thread.sleep(50);
+    // Still waiting for the animation thread
+    verifyNoInteractions(applet);
+    FramePipeline.CommandList frame = pipeline.awaitFrame();
+    verify(applet).point(1f, 2f);
+    assertTrue(frame.isEmpty());
+  }
+
+  @Test
+  @Timeout(10)
+  void testCall() throws Exception {
+    assertEquals("python", pipeline.call(() -> pipeline.isPythonThread() ? "python" : "caller"));
+    assertThrows(IllegalStateException.class, () -> pipeline.call(() -> {
+      throw new IllegalStateException("from python");
+    }));
+    // A call runs in lockstep
+    assertFalse(pipeline.call(() -> pipeline.defer(ints(DrawCommandBuffer.POINT_2), floats(1, 1))));
+  }
+
+}
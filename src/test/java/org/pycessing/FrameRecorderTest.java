@@ -0,0 +1,62 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrameRecorderTest {
+
+  @TempDir
+  File testDir;
+
+  @Test
+  void testInsertFrame() {
+    assertEquals("frames/0012.png", FrameRecorder.insertFrame("frames/####.png", 12));
+    assertEquals("a-000003-b.tif", FrameRecorder.insertFrame("a-######-b.tif", 3));
+    // Like PApplet.insertFrame(), a single # is left alone
+    assertEquals("frame#.png", FrameRecorder.insertFrame("frame#.png", 3));
+    assertEquals("frame.png", FrameRecorder.insertFrame("frame.png", 3));
+  }
+
+  @Test
+  @Timeout(30)
+  void testSaveInBackground() throws IOException {
+    // One buffer, so every save after the first waits for the writer
+    FrameRecorder recorder = new FrameRecorder(2, 1);
+    int[] pixels = new int[4 * 3 + 5];
+    for (int frame = 0; frame < 5; frame++) {
+      pixels[0] = 0xFF000000 | frame;
+      recorder.save(pixels, 4, 3, new File(testDir, "sub/frame-" + frame + ".png").getAbsolutePath());
+    }
+    recorder.close();
+    assertEquals(5, recorder.getWritten());
+    assertEquals(0, recorder.getFailed());
+    for (int frame = 0; frame < 5; frame++) {
+      BufferedImage image = ImageIO.read(new File(testDir, "sub/frame-" + frame + ".png"));
+      assertEquals(4, image.getWidth());
+      assertEquals(3, image.getHeight());
+      // The buffer was copied when saved, not when written
+      assertEquals(frame, image.getRGB(0, 0) & 0xFF);
+    }
+  }
+
+  @Test
+  void testRecord() {
+    FrameRecorder recorder = new FrameRecorder(1, 1);
+    assertFalse(recorder.isRecording());
+    recorder.record("frames/####.png");
+    assertTrue(recorder.isRecording());
+    assertEquals("frames/####.png", recorder.getPattern());
+    recorder.close();
+    assertFalse(recorder.isRecording());
+  }
+
+}
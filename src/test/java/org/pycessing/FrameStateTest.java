@@ -0,0 +1,95 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import processing.core.PApplet;
+
+class FrameStateTest {
+
+  private PApplet applet;
+  private FrameState state;
+
+  private List<String> dirtyNames() {
+    return Arrays.asList(state.getDirtyNames()).subList(0, state.getDirtyCount());
+  }
+
+  private Object dirtyValue(String name) {
+    int i = dirtyNames().indexOf(name);
+    assertTrue(i >= 0, name + " should be dirty");
+    return state.getDirtyValues()[i];
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    applet = new PApplet();
+    state = new FrameState();
+  }
+
+  @Test
+  void testFirstUpdateSendsEverything() {
+    assertEquals(FrameState.NAMES.length, state.update(applet));
+    assertEquals(Arrays.asList(FrameState.NAMES), dirtyNames());
+  }
+
+  @Test
+  void testOnlyChangesAreSent() {
+    state.update(applet);
+    state.markSynced();
+    assertEquals(0, state.update(applet));
+
+    applet.frameCount = 12;
+    applet.mouseX = 40;
+    assertEquals(2, state.update(applet));
+    assertEquals(12, dirtyValue(FrameState.FRAME_COUNT));
+    assertEquals(40, dirtyValue(FrameState.MOUSE_X));
+  }
+
+  @Test
+  void testUnsyncedChangesAreSentAgain() {
+    state.update(applet);
+    state.markSynced();
+
+    applet.width = 640;
+    assertEquals(1, state.update(applet));
+    // Never marked synced, so the resize is still pending
+    assertEquals(1, state.update(applet));
+    assertEquals(640, dirtyValue(FrameState.WIDTH));
+  }
+
+  @Test
+  void testValueTypes() {
+    applet.key = 'a';
+    applet.mousePressed = true;
+    state.update(applet);
+    assertEquals('a', dirtyValue(FrameState.KEY));
+    assertEquals(Boolean.TRUE, dirtyValue(FrameState.MOUSE_PRESSED));
+    assertEquals(Boolean.FALSE, dirtyValue(FrameState.KEY_PRESSED));
+  }
+
+  @Test
+  void testShadowedValuesAreNotSent() {
+    state.setShadowed(FrameState.MOUSE_PRESSED, true);
+    state.update(applet);
+    assertFalse(dirtyNames().contains(FrameState.MOUSE_PRESSED));
+    state.markSynced();
+
+    state.setShadowed(FrameState.MOUSE_PRESSED, false);
+    assertEquals(1, state.update(applet));
+    assertEquals(Boolean.FALSE, dirtyValue(FrameState.MOUSE_PRESSED));
+  }
+
+  @Test
+  void testInvalidate() {
+    state.update(applet);
+    state.markSynced();
+    state.invalidate();
+    assertEquals(FrameState.NAMES.length, state.update(applet));
+  }
+
+}
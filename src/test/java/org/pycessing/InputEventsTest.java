@@ -0,0 +1,75 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PConstants;
+import processing.event.Event;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+
+public class InputEventsTest {
+
+  private static MouseEvent mouse(int action, int x, int count) {
+    return new MouseEvent(null, 0, action, 0, x, 0, PConstants.LEFT, count);
+  }
+
+  @Test
+  public void testMotionMerged() {
+    InputEvents events = new InputEvents(16, EnumSet.of(InputEvents.Merge.MOVE, InputEvents.Merge.DRAG));
+    events.post(mouse(MouseEvent.MOVE, 1, 0));
+    events.post(mouse(MouseEvent.MOVE, 2, 0));
+    events.post(mouse(MouseEvent.PRESS, 2, 1));
+    events.post(mouse(MouseEvent.DRAG, 3, 0));
+    events.post(mouse(MouseEvent.DRAG, 4, 0));
+    events.post(mouse(MouseEvent.DRAG, 5, 0));
+    events.post(new KeyEvent(null, 0, KeyEvent.PRESS, 0, 'a', 'a', false));
+    events.post(mouse(MouseEvent.MOVE, 6, 0));
+    List<Event> drained = new ArrayList<Event>();
+    assertEquals(4, events.drain(drained));
+    assertEquals(MouseEvent.MOVE, drained.get(0).getAction());
+    assertEquals(2, ((MouseEvent) drained.get(0)).getX());
+    assertEquals(MouseEvent.PRESS, drained.get(1).getAction());
+    assertEquals(5, ((MouseEvent) drained.get(2)).getX());
+    assertTrue(drained.get(3) instanceof KeyEvent);
+    assertEquals(3, events.getMerged());
+    // The last move is only merged with what comes after it, next frame
+    drained.clear();
+    assertEquals(1, events.drain(drained));
+    assertEquals(6, ((MouseEvent) drained.get(0)).getX());
+  }
+
+  @Test
+  public void testWheelAndNoMerging() {
+    InputEvents events = new InputEvents(16, EnumSet.of(InputEvents.Merge.WHEEL));
+    events.post(mouse(MouseEvent.WHEEL, 0, 2));
+    events.post(mouse(MouseEvent.WHEEL, 0, -1));
+    events.post(mouse(MouseEvent.MOVE, 1, 0));
+    events.post(mouse(MouseEvent.MOVE, 2, 0));
+    List<Event> drained = new ArrayList<Event>();
+    events.drain(drained);
+    assertEquals(3, drained.size());
+    assertEquals(1, ((MouseEvent) drained.get(0)).getCount());
+  }
+
+  @Test
+  public void testFull() {
+    InputEvents events = new InputEvents(2, EnumSet.noneOf(InputEvents.Merge.class));
+    assertTrue(events.post(mouse(MouseEvent.MOVE, 1, 0)));
+    assertTrue(events.post(mouse(MouseEvent.MOVE, 2, 0)));
+    assertFalse(events.post(mouse(MouseEvent.MOVE, 3, 0)));
+    assertEquals(1, events.getDropped());
+  }
+
+  @Test
+  public void testParseMerge() {
+    assertEquals(EnumSet.of(InputEvents.Merge.MOVE, InputEvents.Merge.WHEEL), InputEvents.parseMerge("move, Wheel"));
+    assertEquals(EnumSet.noneOf(InputEvents.Merge.class), InputEvents.parseMerge("none"));
+  }
+
+}
@@ -120,14 +120,14 @@ private ArrayList<String> newSpiedArgs(String file) {
 
   @AfterEach
   void tearDown() throws Exception {
-    Util.log("Enabling System.exit");
+    Log.debug("Enabling System.exit");
     System.setSecurityManager(originalSecurityManager);
-    Util.log("Releasing output");
+    Log.debug("Releasing output");
     String output = outContent.toString();
     String error = errContent.toString();
     releaseOutput();
 
-    Util.log("Print stdout/stderr");
+    Log.debug("Print stdout/stderr");
     if (!output.isEmpty()) {
       System.out.print("\nout:\n'" + output + "'\n");
     }
@@ -136,11 +136,11 @@ private ArrayList<String> newSpiedArgs(String file) {
       System.err.print("\nerr:\n'" + error + "'\n");
     }
 
-    Util.log("Deleting temp files");
+    Log.debug("Deleting temp files");
     Files.deleteIfExists(testFilePath);
-    Util.log("validateMockitoUsage");
+    Log.debug("validateMockitoUsage");
     Mockito.validateMockitoUsage();
-    Util.log("Done");
+    Log.debug("Done");
   }
   
   public void setupEnvironment() throws JepException {
@@ -0,0 +1,96 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LogTest {
+  private static ByteArrayOutputStream outContent;
+  private static ByteArrayOutputStream errContent;
+  private final static PrintStream originalOut = System.out;
+  private final static PrintStream originalErr = System.err;
+
+  private static void captureOutput() {
+    outContent = new ByteArrayOutputStream();
+    errContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    System.setErr(new PrintStream(errContent));
+  }
+
+  private static void releaseOutput() {
+    System.setOut(originalOut);
+    System.setErr(originalErr);
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Log.flush();
+    captureOutput();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    Log.flush();
+    releaseOutput();
+    Log.setLevel(Log.Level.WARN);
+    Pycessing.VERBOSE = false;
+  }
+
+  @Test
+  void testFormat() {
+    assertEquals("a 1 b 2.5", Log.format("a {} b {}", 1, 2.5f));
+    assertEquals("no args {}", Log.format("no args {}"));
+    assertEquals("extra 1", Log.format("extra {}", 1, 2));
+  }
+
+  @Test
+  void testLevels() {
+    Log.setLevel(Log.Level.INFO);
+    assertFalse(Log.isTraceEnabled());
+    assertFalse(Log.isDebugEnabled());
+    assertTrue(Log.isEnabled(Log.Level.INFO));
+    assertTrue(Log.isEnabled(Log.Level.ERROR));
+    assertFalse(Log.isEnabled(Log.Level.OFF));
+  }
+
+  @Test
+  void testVerboseEnablesDebug() {
+    Log.setLevel(Log.Level.WARN);
+    Pycessing.VERBOSE = true;
+    assertTrue(Log.isDebugEnabled());
+    assertFalse(Log.isTraceEnabled());
+  }
+
+  @Test
+  void testDisabledSupplierIsNotCalled() {
+    Log.setLevel(Log.Level.WARN);
+    Log.debug(() -> {
+      fail("Supplier should not be called when DEBUG is disabled");
+      return "";
+    });
+  }
+
+  @Test
+  void testWrites() {
+    Log.setLevel(Log.Level.DEBUG);
+    Log.trace("not written");
+    Log.debug("debug {}", 1);
+    Log.warn("warn {} {}", "a", "b");
+    Log.flush();
+    assertEquals("debug 1\n", outContent.toString());
+    assertEquals("warn a b\n", errContent.toString());
+  }
+
+  @Test
+  void testParseLevel() {
+    assertEquals(Log.Level.TRACE, Log.parseLevel("trace", Log.Level.WARN));
+    assertEquals(Log.Level.WARN, Log.parseLevel("nonsense", Log.Level.WARN));
+    assertEquals(Log.Level.INFO, Log.parseLevel(null, Log.Level.INFO));
+  }
+
+}
@@ -5,10 +5,15 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -21,6 +26,7 @@ import org.mockito.Mockito;
 
 import jep.JepException;
 import jep.SharedInterpreter;
+import processing.core.PGraphics;
 
 class ManagedInterpreterTest {
   
@@ -56,17 +62,17 @@ class ManagedInterpreterTest {
   }
   
   private static void captureOutput() {
-    Util.log("captureOutput: outContent");
+    Log.debug("captureOutput: outContent");
     outContent = new ByteArrayOutputStream();
-    Util.log("captureOutput: errContent");
+    Log.debug("captureOutput: errContent");
     errContent = new ByteArrayOutputStream();
-    Util.log("captureOutput: capturedOut");
+    Log.debug("captureOutput: capturedOut");
     capturedOut =  new PrintStream(outContent);
-    Util.log("captureOutput: capturedErr");
+    Log.debug("captureOutput: capturedErr");
     capturedErr = new PrintStream(errContent);
-    Util.log("captureOutput: setOut");
+    Log.debug("captureOutput: setOut");
     System.setOut(capturedOut);
-    Util.log("captureOutput: setErr");
+    Log.debug("captureOutput: setErr");
     System.setErr(capturedErr);
   }
   
@@ -98,25 +104,25 @@ class ManagedInterpreterTest {
   @Timeout(5)
   void setUp() throws Exception {
     //Pycessing.VERBOSE=true;
-    Util.log("setUp: testFilePath");
+    Log.debug("setUp: testFilePath");
     testFilePath = Paths.get(testDir.getAbsolutePath()).resolve("testfile.txt");
-    Util.log("setUp: testFile");
-    Util.log("setUp: mockedThread");
+    Log.debug("setUp: testFile");
+    Log.debug("setUp: mockedThread");
 
-    Util.log("setUp: captureOutput");
+    Log.debug("setUp: captureOutput");
     captureOutput();
   }
 
   @AfterEach
   @Timeout(10)
   void tearDown() throws Exception {
-    Util.log("tearDown: delete file");
+    Log.debug("tearDown: delete file");
     
     Files.deleteIfExists(testFilePath);
-    Util.log("tearDown: validateMockitoUsage");
+    Log.debug("tearDown: validateMockitoUsage");
     Mockito.validateMockitoUsage();
-    Util.log("tearDown: spiedInterp.close");
-    Util.log("tearDown: capture content");
+    Log.debug("tearDown: spiedInterp.close");
+    Log.debug("tearDown: capture content");
     Pycessing.VERBOSE=false;
     String output = outContent.toString();
     String error = errContent.toString();
@@ -139,7 +145,7 @@ class ManagedInterpreterTest {
     //interpreter.eval("a = 'hello world'");
 
     String output = interpreter.getCapturedOutput();
-    Util.log("output: '" + output + "'\n'");
+    Log.debug("output: '" + output + "'\n'");
     assertEquals("hello world\n", output);
     //assertEquals("hello world\n", interpreter.getValue("a"));
       
@@ -166,6 +172,25 @@ class ManagedInterpreterTest {
     
   }
   
+  @Test
+  @Timeout(5)
+  public void testOutputSink() throws JepException {
+    OutputSink original = interpreter.getOutputSink();
+    RingBufferSink ring = new RingBufferSink(8, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    try {
+      interpreter.setOutputSink(new DiscardSink());
+      interpreter.eval("print('discarded')");
+      assertEquals("", interpreter.getCapturedOutput());
+
+      interpreter.setOutputSink(ring);
+      interpreter.eval("print('0123456789')");
+      assertEquals("3456789\n", interpreter.getCapturedOutput());
+      assertEquals(3, ring.getDropped());
+    } finally {
+      interpreter.setOutputSink(original);
+    }
+  }
+
   @Test
   @Timeout(5)
   public void testQueueToInterpretAndWait() throws JepException, InterruptedException {
@@ -260,14 +285,277 @@ class ManagedInterpreterTest {
       
     interpreter.runScript(testScript.toString());
     String output = interpreter.getCapturedOutput();
-    Util.log("output: '" + output + "'\n'");
+    Log.debug("output: '" + output + "'\n'");
       
     // The script runs simpleTestFunc(2) (same as testRunScriptNoMain) and prints to stdout:
     // "Function returned: 3"
 
     assertEquals("Function returned: 3\n", output);
+
+
+  }
+
+  @Test
+  @Timeout(5)
+  public void testRunScriptCached() throws IOException, JepException {
+    Path sketch = Paths.get(testDir.getAbsolutePath(), "sketch");
+    Path cache = Paths.get(testDir.getAbsolutePath(), "cache");
+    Files.createDirectories(sketch);
+    Files.write(sketch.resolve("helper.py"), "def twice(n):\n  return n * 2\n".getBytes());
+    Files.write(sketch.resolve("main.py"), "import helper\nresult = helper.twice(21)\n".getBytes());
+    String previous = System.getProperty(BytecodeCache.DIRECTORY_PROPERTY);
+    System.setProperty(BytecodeCache.DIRECTORY_PROPERTY, cache.toString());
+    try {
+      interpreter.runScript(sketch.resolve("main.py").toString());
+      assertEquals(42, interpreter.getValue("result", Integer.class));
+      // The script and the helper it imported
+      assertEquals(2, cache.toFile().list().length);
+      assertEquals(2, interpreter.getValue("__pyc_bytecode_cache__.misses", Integer.class));
+      
+      interpreter.exec("del result");
+      interpreter.runScript(sketch.resolve("main.py").toString());
+      assertEquals(42, interpreter.getValue("result", Integer.class));
+      assertEquals(1, interpreter.getValue("__pyc_bytecode_cache__.hits", Integer.class));
+      
+      // An edit replaces the script's entry instead of adding one
+      Files.write(sketch.resolve("main.py"), "import helper\nresult = helper.twice(4)\n".getBytes());
+      interpreter.runScript(sketch.resolve("main.py").toString());
+      assertEquals(8, interpreter.getValue("result", Integer.class));
+      assertEquals(2, cache.toFile().list().length);
+    } finally {
+      if (previous == null) {
+        System.clearProperty(BytecodeCache.DIRECTORY_PROPERTY);
+      } else {
+        System.setProperty(BytecodeCache.DIRECTORY_PROPERTY, previous);
+      }
+    }
+  }
+
+  @Test
+  @Timeout(5)
+  public void testReloadScript() throws IOException, JepException {
+    Path sketch = Paths.get(testDir.getAbsolutePath(), "reload.py");
+    Files.write(sketch, ("__keep__ = ['count']\ncount = 0\nspeed = 1\n"
+        + "def draw():\n  print(speed)\ndef mousePressed():\n  pass\n").getBytes());
+    interpreter.runScript(sketch.toString());
+    interpreter.exec("count = 7");
+    assertTrue(interpreter.hasSketchFunction(ManagedInterpreter.MOUSE_PRESSED));
     
+    Files.write(sketch, "__keep__ = ['count']\ncount = 0\nspeed = 2\ndef draw():\n  print(speed * 10)\n".getBytes());
+    assertTrue(interpreter.reloadScript(sketch.toString()));
+    assertEquals(7, interpreter.getValue("count", Integer.class));
+    assertFalse(interpreter.hasSketchFunction(ManagedInterpreter.MOUSE_PRESSED));
+    interpreter.callSketchFunction(ManagedInterpreter.DRAW);
+    assertEquals("20\n", interpreter.getCapturedOutput());
     
+    // A syntax error leaves the running sketch alone
+    Files.write(sketch, "def draw(:\n".getBytes());
+    assertFalse(interpreter.reloadScript(sketch.toString()));
+    assertTrue(interpreter.getCapturedError().contains("SyntaxError"));
+    interpreter.callSketchFunction(ManagedInterpreter.DRAW);
+    assertEquals("20\n", interpreter.getCapturedOutput());
+    
+    // So does one that raises before it gets to defining draw()
+    Files.write(sketch, "speed = 1 / 0\ndef draw():\n  print('new')\n".getBytes());
+    assertFalse(interpreter.reloadScript(sketch.toString()));
+    assertTrue(interpreter.getCapturedError().contains("ZeroDivisionError"));
+    interpreter.callSketchFunction(ManagedInterpreter.DRAW);
+    assertEquals("20\n", interpreter.getCapturedOutput());
+  }
+
+  @Test
+  @Timeout(5)
+  public void testCallSketchFunction() throws JepException {
+    interpreter.exec("def draw():\n  print('first draw')\n");
+    assertTrue(interpreter.callSketchFunction(ManagedInterpreter.DRAW));
+    assertTrue(interpreter.callSketchFunction(ManagedInterpreter.DRAW));
+    assertEquals("first draw\nfirst draw\n", interpreter.getCapturedOutput());
+
+    // Rebinding draw has to be picked up on the next call
+    interpreter.exec("def draw():\n  print('second draw')\n");
+    assertTrue(interpreter.callSketchFunction(ManagedInterpreter.DRAW));
+    assertEquals("second draw\n", interpreter.getCapturedOutput());
+
+    interpreter.exec("del draw");
+    assertFalse(interpreter.callSketchFunction(ManagedInterpreter.DRAW));
+  }
+
+  @Test
+  @Timeout(5)
+  public void testPycessingModule() throws JepException {
+    // What the sketch's globals have, a helper module can import
+    interpreter.exec("import pycessing\n"
+        + "from pycessing import PI as __pi__, ellipse as __ellipse__\n"
+        + "__same__ = __pi__ == PI and __ellipse__ is ellipse and pycessing.PAppletMain is PAppletMain\n");
+    assertTrue(interpreter.getValue("__same__", Boolean.class));
+    interpreter.exec("del __pi__, __ellipse__, __same__");
+  }
+
+  @Test
+  @Timeout(5)
+  public void testBadArgumentsLeaveTheBatchAligned() throws JepException {
+    interpreter.exec("batchDraw(True)\n"
+        + "line(0, 0, 1, 1)\n"
+        + "try:\n"
+        + "  line(0, 0, 'x', None)\n"
+        + "except Exception:\n"
+        + "  pass\n"
+        + "line(2, 2, 3, 3)\n");
+    // The bad call flushed what came before and queued nothing of its own
+    assertTrue(interpreter.getValue("len(__pyc_batch__.ops) == 1 and __pyc_batch__.args.tolist() == [2.0, 2.0, 3.0, 3.0]",
+        Boolean.class));
+    interpreter.exec("batchDraw(False)");
+  }
+
+  @Test
+  @Timeout(5)
+  public void testRetainedNestedAndSpoiled() throws JepException {
+    interpreter.exec("__runs__ = []\n"
+        + "@retained\n"
+        + "def __inner__(n):\n"
+        + "  __runs__.append('inner')\n"
+        + "  line(0, 0, n, n)\n"
+        + "  return n\n"
+        + "@retained\n"
+        + "def __outer__(n):\n"
+        + "  __runs__.append('outer')\n"
+        + "  line(0, 0, 1, 1)\n"
+        + "  return __inner__(n) + 1\n"
+        + "@retained\n"
+        + "def __spoiled__():\n"
+        + "  line(0, 0, 1, 1)\n"
+        + "  text('a', 0, 0)\n"
+        + "  line(1, 1, 2, 2)\n"
+        + "__results__ = [__outer__(2), __outer__(2), __inner__(2)]\n"
+        + "__spoiled__()\n");
+    // The nested call is recorded on its own too, and replays return what was returned
+    assertTrue(interpreter.getValue("__results__ == [3, 3, 2]", Boolean.class));
+    assertTrue(interpreter.getValue("__runs__ == ['outer', 'inner']", Boolean.class));
+    assertTrue(interpreter.getValue("len(__outer__.direct) == 0 and len(__inner__.direct) == 0", Boolean.class));
+    // A call that can't be recorded in the middle keeps the whole function out
+    assertTrue(interpreter.getValue("len(__spoiled__.direct) == 1", Boolean.class));
+    interpreter.exec("invalidateRetained()\nbatchDraw(False)\n"
+        + "del __runs__, __inner__, __outer__, __spoiled__, __results__");
+    interpreter.getCapturedError();
+  }
+
+  @Test
+  @Timeout(5)
+  public void testHandlersAreNotBoundToPAppletMain() throws JepException {
+    interpreter.exec("pass");
+    assertFalse(interpreter.hasSketchFunction(ManagedInterpreter.MOUSE_PRESSED));
+    assertFalse(interpreter.hasSketchFunction(ManagedInterpreter.KEY_TYPED));
+  }
+
+  @Test
+  @Timeout(5)
+  public void testSubmit() throws Exception {
+    CompletableFuture<EvalResult> assign = interpreter.submit("y = 41");
+    CompletableFuture<EvalResult> expression = interpreter.submit("y + 1");
+    CompletableFuture<EvalResult> printed = interpreter.submit("print('hello')");
+    CompletableFuture<EvalResult> raised = interpreter.submit("1/0");
+    assertFalse(assign.isDone());
+    interpreter.setReplBudget(1000);
+    assertEquals(4, interpreter.processSubmissions());
+
+    assertTrue(assign.get().succeeded());
+    assertNull(assign.get().getValue());
+    assertEquals(42, expression.get().getValue());
+    assertEquals("hello\n", printed.get().getOutput());
+    // submit() output also reaches the sketch's own streams
+    assertEquals("hello\n", interpreter.getCapturedOutput());
+    assertFalse(raised.get().succeeded());
+    assertNotNull(raised.get().getException());
+    assertTrue(raised.get().getError().contains("ZeroDivisionError"));
+  }
+
+  @Test
+  @Timeout(5)
+  public void testSubmitInteractive() throws Exception {
+    interpreter.setReplBudget(1000);
+    CompletableFuture<EvalResult> echoed = interpreter.submitInteractive("6 * 7");
+    interpreter.processSubmissions();
+    assertEquals("42\n", echoed.get().getOutput());
+    assertNull(echoed.get().getValue());
+    assertEquals("", interpreter.getCapturedOutput());
+  }
+
+  @Test
+  @Timeout(5)
+  public void testSubmissionBudget() throws JepException {
+    interpreter.setReplBudget(0);
+    interpreter.submit("a = 1");
+    interpreter.submit("b = 2");
+    assertEquals(1, interpreter.processSubmissions());
+    assertEquals(1, interpreter.processSubmissions());
+    assertEquals(0, interpreter.processSubmissions());
+  }
+
+  @Test
+  @Timeout(5)
+  public void testSubmissionRedefinesDraw() throws JepException {
+    interpreter.setReplBudget(1000);
+    interpreter.submitInteractive("def draw():\n  print('from the repl')\n");
+    interpreter.processSubmissions();
+    assertTrue(interpreter.callSketchFunction(ManagedInterpreter.DRAW));
+    assertEquals("from the repl\n", interpreter.getCapturedOutput());
+    interpreter.exec("del draw");
+  }
+
+  // Each interpreter on its own thread with its own sketch, both open at once
+  private static CompletableFuture<Integer> loadPixelArrayOnThread(int color, CountDownLatch loaded) {
+    PAppletConnector connector = Mockito.mock(PAppletConnector.class);
+    connector.g = new PGraphics();
+    connector.g.pixelWidth = 4;
+    connector.pixels = new int[4 * 3];
+    Arrays.fill(connector.pixels, color);
+    CompletableFuture<Integer> first = new CompletableFuture<Integer>();
+    Thread thread = new Thread(() -> {
+      try (ManagedInterpreter i = new ManagedInterpreter(connector)) {
+        i.exec("px = loadPixelArray()\n"
+            + "assert px.shape == (3, 4)\n"
+            + "first = int(px[0, 0])\n");
+        loaded.countDown();
+        loaded.await(5, TimeUnit.SECONDS);
+        first.complete(((Number) i.getValue("first")).intValue());
+      } catch (Throwable e) {
+        loaded.countDown();
+        first.completeExceptionally(e);
+      }
+    });
+    thread.start();
+    return first;
+  }
+
+  @Test
+  @Timeout(10)
+  public void testPixelArrayInTwoInterpreters() throws Exception {
+    // numpy can only be initialized once per process, so it has to be shared
+    CountDownLatch loaded = new CountDownLatch(2);
+    CompletableFuture<Integer> red = loadPixelArrayOnThread(0xFFFF0000, loaded);
+    CompletableFuture<Integer> green = loadPixelArrayOnThread(0xFF00FF00, loaded);
+    assertEquals(0xFFFF0000, red.get().intValue());
+    assertEquals(0xFF00FF00, green.get().intValue());
+  }
+
+  @Test
+  @Timeout(10)
+  public void testSubmitAfterClose() throws Exception {
+    CompletableFuture<ManagedInterpreter> closed = new CompletableFuture<ManagedInterpreter>();
+    Thread thread = new Thread(() -> {
+      try {
+        ManagedInterpreter i = new ManagedInterpreter(mockedConnector);
+        i.close();
+        closed.complete(i);
+      } catch (Throwable e) {
+        closed.completeExceptionally(e);
+      }
+    });
+    thread.start();
+    CompletableFuture<EvalResult> late = closed.get().submit("1 + 1");
+    // Failed at once instead of waiting forever
+    assertTrue(late.isCompletedExceptionally());
+    assertTrue(closed.get().submitInteractive("pass").isCompletedExceptionally());
   }
 
 }
@@ -0,0 +1,120 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedFrameRingTest {
+
+  @TempDir
+  File testDir;
+
+  private static int[] frame(int width, int height, int value) {
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = 0xFF000000 | (value << 8) | i;
+    }
+    return pixels;
+  }
+
+  private static ByteBuffer read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer data = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      while (data.hasRemaining() && channel.read(data) >= 0) {
+      }
+      data.flip();
+      return data;
+    }
+  }
+
+  @Test
+  void testNothingUntilTheFirstFrame() throws IOException {
+    Path path = testDir.toPath().resolve("ring");
+    MappedFrameRing ring = new MappedFrameRing(path, 2);
+    ring.close();
+    assertFalse(path.toFile().exists());
+  }
+
+  @Test
+  void testHeader() throws IOException {
+    Path path = testDir.toPath().resolve("ring");
+    MappedFrameRing ring = new MappedFrameRing(path, 3);
+    ring.write(frame(5, 3, 1), 5, 3, 0);
+    ring.close();
+
+    ByteBuffer data = read(path);
+    byte[] magic = new byte[8];
+    data.get(magic);
+    assertArrayEquals(MappedFrameRing.MAGIC, magic);
+    assertEquals(1, data.getInt(8));
+    assertEquals(3, data.getInt(MappedFrameRing.SLOTS_OFFSET));
+    assertEquals(5, data.getInt(MappedFrameRing.WIDTH_OFFSET));
+    assertEquals(3, data.getInt(MappedFrameRing.HEIGHT_OFFSET));
+    assertEquals(MappedFrameRing.FORMAT_BGRA, data.getInt(MappedFrameRing.FORMAT_OFFSET));
+    assertEquals(64, data.getInt(MappedFrameRing.HEADER_SIZE_OFFSET));
+    long slotSize = data.getLong(MappedFrameRing.SLOT_SIZE_OFFSET);
+    assertEquals(0, slotSize % 64);
+    assertTrue(slotSize >= 16 + 5 * 3 * 4);
+    assertEquals(64 + 3 * slotSize, data.limit());
+    assertEquals(1, data.getLong(MappedFrameRing.SEQUENCE_OFFSET));
+  }
+
+  @Test
+  void testFramesWrapAround() throws IOException {
+    Path path = testDir.toPath().resolve("ring");
+    MappedFrameRing ring = new MappedFrameRing(path, 2);
+    for (int i = 0; i < 5; i++) {
+      ring.write(frame(4, 2, i), 4, 2, 10 + i);
+    }
+    assertEquals(5, ring.getSequence());
+    ring.close();
+
+    ByteBuffer data = read(path);
+    long slotSize = data.getLong(MappedFrameRing.SLOT_SIZE_OFFSET);
+    assertEquals(5, data.getLong(MappedFrameRing.SEQUENCE_OFFSET));
+    // Frame 5 overwrote frame 3 in the first slot, frame 4 is still in the second
+    int first = 64;
+    int second = (int) (64 + slotSize);
+    assertEquals(5, data.getLong(first));
+    assertEquals(14, data.getInt(first + 8));
+    assertEquals(4, data.getLong(second));
+    assertEquals(13, data.getInt(second + 8));
+
+    int[] expected = frame(4, 2, 4);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], data.getInt(first + 16 + i * 4));
+    }
+    // 0xFF000400 is B, G, R, A in memory
+    assertEquals(0x00, data.get(first + 16) & 0xFF);
+    assertEquals(0x04, data.get(first + 16 + 1) & 0xFF);
+    assertEquals(0x00, data.get(first + 16 + 2) & 0xFF);
+    assertEquals(0xFF, data.get(first + 16 + 3) & 0xFF);
+  }
+
+  @Test
+  void testOtherSizesAreSkipped() throws IOException {
+    Path path = testDir.toPath().resolve("ring");
+    MappedFrameRing ring = new MappedFrameRing(path, 2);
+    ring.write(frame(4, 2, 0), 4, 2, 0);
+    ring.write(frame(8, 8, 1), 8, 8, 1);
+    assertEquals(1, ring.getSequence());
+    ring.write(frame(4, 2, 2), 4, 2, 2);
+    assertEquals(2, ring.getSequence());
+    ring.close();
+  }
+
+  @Test
+  void testSlotsMustBePositive() {
+    assertThrows(IllegalArgumentException.class, () -> new MappedFrameRing(testDir.toPath().resolve("ring"), 0));
+  }
+
+}
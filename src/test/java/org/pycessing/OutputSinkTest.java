@@ -0,0 +1,135 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+class OutputSinkTest {
+
+  @TempDir
+  public File testDir;
+
+  @Test
+  void testRingBufferDrain() {
+    RingBufferSink sink = new RingBufferSink(16, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    sink.write("hello ");
+    sink.write("world\n");
+    assertEquals("hello world\n", sink.drain());
+    assertEquals("", sink.drain());
+    assertEquals(0, sink.getDropped());
+  }
+
+  @Test
+  void testRingBufferDropOldest() {
+    RingBufferSink sink = new RingBufferSink(8, RingBufferSink.OverflowPolicy.DROP_OLDEST);
+    sink.write("abcdef");
+    sink.write("ghij");
+    assertEquals("cdefghij", sink.drain());
+    assertEquals(2, sink.getDropped());
+
+    // Wrapped around the end of the buffer
+    sink.write("12345");
+    sink.write("6789");
+    assertEquals("23456789", sink.drain());
+
+    sink.write("a much longer string than fits");
+    assertEquals(8, sink.size());
+    assertEquals("han fits", sink.drain());
+  }
+
+  @Test
+  void testRingBufferDropNewest() {
+    RingBufferSink sink = new RingBufferSink(8, RingBufferSink.OverflowPolicy.DROP_NEWEST);
+    sink.write("abcdef");
+    sink.write("ghij");
+    sink.write("klm");
+    assertEquals("abcdefgh", sink.drain());
+    assertEquals(5, sink.getDropped());
+    sink.write("xyz");
+    assertEquals("xyz", sink.drain());
+  }
+
+  @Test
+  void testRingBufferBadCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new RingBufferSink(0, RingBufferSink.OverflowPolicy.DROP_OLDEST));
+  }
+
+  @Test
+  void testDiscard() {
+    OutputSink sink = new DiscardSink();
+    sink.write("nothing");
+    sink.flush();
+    sink.close();
+  }
+
+  @Test
+  void testPassthroughAndTee() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RingBufferSink ring = new RingBufferSink();
+    OutputSink sink = new TeeSink(new PassthroughSink(new PrintStream(out)), ring);
+    sink.write("both\n");
+    sink.flush();
+    assertEquals("both\n", out.toString());
+    assertEquals("both\n", ring.drain());
+  }
+
+  @Test
+  void testPythonStream() {
+    RingBufferSink first = new RingBufferSink();
+    RingBufferSink second = new RingBufferSink();
+    PythonStream stream = new PythonStream(first);
+    assertEquals(5, stream.write("first"));
+    stream.setSink(second);
+    stream.write("second");
+    assertEquals("first", first.drain());
+    assertEquals("second", second.drain());
+    assertFalse(stream.isatty());
+  }
+
+  @Test
+  @Timeout(5)
+  void testAsyncFileSink() throws IOException {
+    Path file = testDir.toPath().resolve("output.txt");
+    AsyncFileSink sink = new AsyncFileSink(file);
+    for (int i = 0; i < 100; i++) {
+      sink.write("line " + i + "\n");
+    }
+    sink.close();
+
+    String written = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    assertTrue(written.startsWith("line 0\nline 1\n"));
+    assertTrue(written.endsWith("line 99\n"));
+    assertEquals(0, sink.getDropped());
+
+    // Writes after close are counted, not written
+    sink.write("late");
+    assertEquals(1, sink.getDropped());
+  }
+
+  @Test
+  @Timeout(5)
+  void testAsyncFileSinkCloseAfterWriteError() throws IOException {
+    // Every write to /dev/full fails, which stops the writer thread
+    Path full = Paths.get("/dev/full");
+    assumeTrue(Files.isWritable(full));
+    AsyncFileSink sink = new AsyncFileSink(full, 4);
+    for (int i = 0; i < 100; i++) {
+      sink.write("line " + i + "\n");
+    }
+    sink.close();
+    assertTrue(sink.getDropped() > 0);
+  }
+
+}
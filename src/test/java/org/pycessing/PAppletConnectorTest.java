@@ -14,6 +14,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -29,9 +30,13 @@ import org.pycessing.PAppletConnector;
 
 import jep.JepException;
 import jep.python.PyCallable;
+import processing.awt.PGraphicsJava2D;
 import processing.core.PApplet;
 import processing.core.PConstants;
+import processing.core.PGraphics;
 import processing.core.PSurface;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
 
 public class PAppletConnectorTest {
   private static ByteArrayOutputStream outContent;
@@ -186,6 +191,97 @@ public class PAppletConnectorTest {
     assertEquals(testApplet.getRenderer(), PConstants.PDF);
   }
   
+  @Test
+  public void testHeadlessOutputPaths() {
+    assertTrue(PAppletConnector.isImageFile(Paths.get("out", "last.PNG")));
+    assertTrue(PAppletConnector.isImageFile(Paths.get("still.tif")));
+    assertFalse(PAppletConnector.isImageFile(Paths.get("frames")));
+    assertEquals(Paths.get("frames", "frame-000012.png"), PAppletConnector.framePath(Paths.get("frames"), 12));
+  }
+  
+  @Test
+  @Timeout(30)
+  public void testRunHeadlessFrames() throws JepException {
+    Mockito.when(mockedInterpreter.hasSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true);
+    Path out = Paths.get(testDir.getAbsolutePath()).resolve("frames");
+    
+    assertEquals(3, testApplet.runHeadless(3, out));
+    assertTrue(Files.exists(PAppletConnector.framePath(out, 1)));
+    assertTrue(Files.exists(PAppletConnector.framePath(out, 3)));
+    assertFalse(Files.exists(PAppletConnector.framePath(out, 4)));
+    Mockito.verify(mockedInterpreter).callSketchFunction(ManagedInterpreter.SETUP);
+    Mockito.verify(mockedInterpreter, Mockito.times(3)).callSketchFunction(ManagedInterpreter.DRAW);
+    Mockito.verify(mockedInterpreter).close();
+  }
+  
+  @Test
+  @Timeout(30)
+  public void testRunHeadlessLastFrameOnly() throws JepException {
+    Mockito.when(mockedInterpreter.hasSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true);
+    Path out = Paths.get(testDir.getAbsolutePath()).resolve("last.png");
+    
+    assertEquals(2, testApplet.runHeadless(2, out));
+    assertTrue(Files.exists(out));
+    assertEquals(1, testDir.list().length);
+  }
+  
+  @Test
+  @Timeout(30)
+  public void testRunHeadlessExit() throws JepException {
+    Mockito.when(mockedInterpreter.hasSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true);
+    Mockito.when(mockedInterpreter.callSketchFunction(ManagedInterpreter.DRAW)).then(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) {
+        testApplet.exit();
+        return true;
+      }
+    });
+    
+    assertEquals(1, testApplet.runHeadless(0, null));
+    assertTrue(testApplet.finished);
+  }
+  
+  @Test
+  @Timeout(30)
+  public void testRunHeadlessLifecycle() throws JepException, InterruptedException {
+    Mockito.when(mockedInterpreter.hasSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true);
+    ArrayList<SketchLifecycle.State> seen = new ArrayList<SketchLifecycle.State>();
+    testApplet.getLifecycle().addListener((from, to) -> seen.add(to));
+    
+    testApplet.runHeadless(2, null);
+    testApplet.waitForFinish();
+    assertEquals(SketchLifecycle.State.FINISHED, testApplet.getLifecycle().getState());
+    assertEquals(Arrays.asList(SketchLifecycle.State.SETTINGS, SketchLifecycle.State.SETUP,
+        SketchLifecycle.State.RUNNING, SketchLifecycle.State.DISPOSING, SketchLifecycle.State.FINISHED), seen);
+  }
+  
+  @Test
+  public void testEventsDispatchedPerFrame() throws JepException {
+    testApplet.postEvent(new MouseEvent(null, 0, MouseEvent.MOVE, 0, 1, 1, 0, 0));
+    testApplet.postEvent(new MouseEvent(null, 0, MouseEvent.MOVE, 0, 2, 2, 0, 0));
+    testApplet.postEvent(new MouseEvent(null, 0, MouseEvent.MOVE, 0, 3, 4, 0, 0));
+    testApplet.postEvent(new MouseEvent(null, 0, MouseEvent.PRESS, 0, 3, 4, PConstants.LEFT, 1));
+    testApplet.postEvent(new KeyEvent(null, 0, KeyEvent.PRESS, 0, 'a', 'a', false));
+    // Nothing runs until the animation thread drains the queue
+    Mockito.verify(mockedInterpreter, Mockito.never()).callSketchFunction(Mockito.anyString(), Mockito.any());
+    
+    testApplet.dequeueEvents();
+    Mockito.verify(mockedInterpreter, Mockito.times(1)).callSketchFunction(ManagedInterpreter.MOUSE_MOVED);
+    Mockito.verify(mockedInterpreter).callSketchFunction(ManagedInterpreter.MOUSE_PRESSED);
+    Mockito.verify(mockedInterpreter).callSketchFunction(ManagedInterpreter.KEY_PRESSED);
+    assertEquals(3, testApplet.mouseX);
+    assertEquals(4, testApplet.mouseY);
+    assertEquals('a', testApplet.key);
+    assertEquals(2, testApplet.getInputEvents().getMerged());
+  }
+  
+  @Test
+  public void testCanPipeline() {
+    assertTrue(PAppletConnector.canPipeline(new PGraphicsJava2D()));
+    assertFalse(PAppletConnector.canPipeline(new PGraphics()));
+    assertFalse(PAppletConnector.canPipeline(null));
+  }
+  
   @Test
   public void testRun() throws FileNotFoundException {
     // this might be better to run with a file creating script?
@@ -0,0 +1,36 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class PipeFrameStreamTest {
+
+  @Test
+  void testFramesBackToBack() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PipeFrameStream stream = new PipeFrameStream(out);
+    stream.write(new int[] {0xFF102030, 0x80405060, 0}, 2, 1, 0);
+    stream.write(new int[] {0xFFAABBCC, 0x00000001}, 2, 1, 1);
+    stream.close();
+    // Only width * height pixels of each, in B, G, R, A order, with no header
+    assertArrayEquals(new byte[] {
+        0x30, 0x20, 0x10, (byte) 0xFF, 0x60, 0x50, 0x40, (byte) 0x80,
+        (byte) 0xCC, (byte) 0xBB, (byte) 0xAA, (byte) 0xFF, 0x01, 0x00, 0x00, 0x00}, out.toByteArray());
+  }
+
+  @Test
+  void testOtherSizesAreSkipped() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PipeFrameStream stream = new PipeFrameStream(out);
+    stream.write(new int[] {1, 2}, 2, 1, 0);
+    stream.write(new int[] {1, 2, 3, 4}, 2, 2, 1);
+    stream.write(new int[] {3, 4}, 2, 1, 2);
+    stream.close();
+    assertEquals(16, out.size());
+  }
+
+}
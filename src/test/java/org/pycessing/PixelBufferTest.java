@@ -0,0 +1,59 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jep.DirectNDArray;
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+
+public class PixelBufferTest {
+
+  private PApplet applet;
+  private PGraphicsJava2D graphics;
+
+  @BeforeEach
+  void setUp() {
+    applet = new PApplet();
+    graphics = new PGraphicsJava2D();
+    graphics.setParent(applet);
+    graphics.setPrimary(false);
+    graphics.setSize(40, 30);
+    graphics.image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+    applet.g = graphics;
+    graphics.beginDraw();
+    graphics.background(255, 0, 0);
+    graphics.endDraw();
+  }
+
+  @Test
+  public void testLoad() {
+    PixelBuffer pixels = new PixelBuffer(applet);
+    DirectNDArray<IntBuffer> array = pixels.load();
+    assertArrayEquals(new int[] { 30, 40 }, array.getDimensions());
+    assertTrue(array.isUnsigned());
+    assertTrue(array.getData().isDirect());
+    assertEquals(0xFFFF0000, array.getData().get(0));
+    assertEquals(0xFFFF0000, array.getData().get(40 * 30 - 1));
+    // The same memory every frame
+    assertSame(array, pixels.load());
+  }
+
+  @Test
+  public void testUpdate() {
+    PixelBuffer pixels = new PixelBuffer(applet);
+    // Nothing loaded yet
+    pixels.update();
+    IntBuffer buffer = pixels.load().getData();
+    buffer.put(41, 0xFF00FF00);
+    pixels.update();
+    assertEquals(0xFF00FF00, graphics.get(1, 1));
+    assertEquals(0xFFFF0000, graphics.get(0, 0));
+  }
+
+}
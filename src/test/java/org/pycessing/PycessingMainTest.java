@@ -61,21 +61,43 @@ public class PycessingMainTest {
       "    -c,--stop-color <arg>      Set the color of the stop button. <arg> should be\n" + 
       "                               in the form of a hexadecimal like #FFFFFF\n" + 
       "    -d,--display <arg>         Suggest a display to use\n" + 
+      "    -e,--record <arg>          Save every frame in the background to <arg>, with\n" + 
+      "                               #### replaced by the frame number, e.g.\n" + 
+      "                               frames/####.png\n" + 
       "    -h,--help                  Print this help message\n" + 
       "    -hs,--hide-stop            -hs or --hide-stop: Hide the stop button\n" + 
       "    -i,--interactive           Start an interactive session\n" + 
+      "    -n,--frames <arg>          With --headless, stop after <arg> frames\n" + 
+      "    -o,--out <arg>             With --headless, write every frame into the\n" + 
+      "                               directory <arg>, or only the last frame if <arg>\n" + 
+      "                               is an image file like out.png\n" + 
       "    -p,--present               Run the sketch in present (fullscreen) mode\n" + 
+      "    -pl,--pipeline             Run draw() on its own thread, one frame ahead of\n" + 
+      "                               rendering\n" + 
+      "    -r,--reload                Reload the sketch whenever a Python file in its\n" + 
+      "                               folder changes, keeping the window open\n" + 
       "    -s,--sketch-path <arg>     Set the sketch folder. This folder will be used\n" + 
       "                               as the default location for commands like\n" + 
       "                               \"saveFrame()\"\n" + 
+      "    -t,--stream <arg>          Write every frame's raw pixels to <arg>, a ring\n" + 
+      "                               file for a local reader, or - for standard output\n" + 
       "    -v,--verbose               Print debugging information\n" + 
       "    -w,--window-color <arg>    Set the color of the display window. <arg> should\n" + 
-      "                               be in the form of a hexadecimal like #FFFFFF\n";
+      "                               be in the form of a hexadecimal like #FFFFFF\n" + 
+      "    -x,--headless              Render offscreen with no window, as fast as\n" + 
+      "                               possible\n";
   
   private static void reset() {
     Pycessing.INTERACTIVE=false;
     Pycessing.VERBOSE=false;
     Pycessing.PAppletArgs.clear();
+    Pycessing.HEADLESS=false;
+    Pycessing.FRAMES=0;
+    Pycessing.OUTPUT=null;
+    Pycessing.RELOAD=false;
+    Pycessing.PIPELINE=false;
+    Pycessing.RECORD=null;
+    Pycessing.STREAM=null;
   }
 
   private static void failWithMessage(String msg) {
@@ -159,6 +181,12 @@ public class PycessingMainTest {
     assertTrue(options.hasShortOption("h"));
     assertTrue(options.hasLongOption("sketch-path"));
     assertTrue(options.hasShortOption("s"));
+    assertTrue(options.hasLongOption("headless"));
+    assertTrue(options.hasShortOption("x"));
+    assertTrue(options.hasLongOption("frames"));
+    assertTrue(options.hasShortOption("n"));
+    assertTrue(options.hasLongOption("out"));
+    assertTrue(options.hasShortOption("o"));
   }
   
   @Test
@@ -730,4 +758,118 @@ public class PycessingMainTest {
         "\nRecieved:\n" + content + "\n");
   }
 
+  @Test
+  @Timeout(5)
+  public void testHeadlessOptionsLong() {
+    String[] args = {"--headless", "--frames", "30", "--out", "frames", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testHeadlessOptionsLong Caught Exception: " + errContent.toString());
+    }
+    assertTrue(Pycessing.HEADLESS);
+    assertEquals(30, Pycessing.FRAMES);
+    assertEquals("frames", Pycessing.OUTPUT);
+  }
+  
+  @Test
+  @Timeout(5)
+  public void testReloadOption() {
+    String[] args = {"--reload", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testReloadOption Caught Exception: " + errContent.toString());
+    }
+    assertTrue(Pycessing.RELOAD);
+    reset();
+    args = new String[] {"-r", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testReloadOption Caught Exception: " + errContent.toString());
+    }
+    assertTrue(Pycessing.RELOAD);
+  }
+  
+  @Test
+  @Timeout(5)
+  public void testPipelineOption() {
+    String[] args = {"--pipeline", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testPipelineOption Caught Exception: " + errContent.toString());
+    }
+    assertTrue(Pycessing.PIPELINE);
+    reset();
+    args = new String[] {"-pl", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testPipelineOption Caught Exception: " + errContent.toString());
+    }
+    assertTrue(Pycessing.PIPELINE);
+  }
+  
+  @Test
+  @Timeout(5)
+  public void testRecordOption() {
+    String[] args = {"--record", "frames/####.png", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testRecordOption Caught Exception: " + errContent.toString());
+    }
+    assertEquals("frames/####.png", Pycessing.RECORD);
+  }
+  
+  @Test
+  @Timeout(5)
+  public void testStreamOption() {
+    String[] args = {"-t", "-", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testStreamOption Caught Exception: " + errContent.toString());
+    }
+    assertEquals("-", Pycessing.STREAM);
+  }
+  
+  @Test
+  @Timeout(5)
+  public void testHeadlessOptionsShort() {
+    String[] args = {"-x", "-n", "1", "-o", "last.png", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testHeadlessOptionsShort Caught Exception: " + errContent.toString());
+    }
+    assertTrue(Pycessing.HEADLESS);
+    assertEquals(1, Pycessing.FRAMES);
+    assertEquals("last.png", Pycessing.OUTPUT);
+  }
+  
+  @Test
+  @Timeout(5)
+  public void testFramesOptionsNotANumber() {
+    String[] args = {"-x", "-n", "many", testFile.getAbsolutePath()};
+    try {
+      Pycessing.getArgs(testOptions, args);
+    } catch (ParseException e) {
+      e.printStackTrace();
+      failWithMessage("testFramesOptionsNotANumber Caught Exception: " + errContent.toString());
+    }
+    assertEquals(0, Pycessing.FRAMES);
+    assertEquals(standardUsageString + "Frames argument must be a positive number. Received: many\n", errContent.toString());
+  }
+
 }
@@ -0,0 +1,83 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mockito.Mockito;
+
+class ReplTest {
+
+  private static boolean complete(String... lines) {
+    return Repl.isComplete(Arrays.asList(lines));
+  }
+
+  @Test
+  void testSimpleStatements() {
+    assertTrue(complete("x = 1"));
+    assertTrue(complete("print('a:')  # trailing colon in a string"));
+    assertTrue(complete("x = (1,", "  2)"));
+    assertFalse(complete("x = (1,"));
+    assertFalse(complete("x = 1 + \\"));
+    assertFalse(complete("s = '''start"));
+    assertTrue(complete("s = '''start", "end'''"));
+  }
+
+  @Test
+  void testCompoundStatements() {
+    assertFalse(complete("def f():"));
+    assertFalse(complete("def f():", "  return 1"));
+    assertTrue(complete("def f():", "  return 1", ""));
+    assertFalse(complete("@decorator"));
+    assertFalse(complete("def f(a,", "      b):", "  pass"));
+    assertTrue(complete("def f(a,", "      b):", "  pass", ""));
+  }
+
+  @Test
+  @Timeout(5)
+  void testRun() {
+    ManagedInterpreter interpreter = Mockito.mock(ManagedInterpreter.class);
+    List<String> queued = new ArrayList<String>();
+    Mockito.when(interpreter.submitInteractive(Mockito.anyString())).then(invocation -> {
+      String code = invocation.getArgument(0);
+      queued.add(code);
+      return CompletableFuture.completedFuture(new EvalResult(null, "out " + queued.size() + "\n",
+          code.startsWith("1/0") ? "ZeroDivisionError\n" : "", null));
+    });
+    String input = "x = 1\n\ndef f():\n  return x\n\n1/0\nprint(f())";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    new Repl(interpreter, new ByteArrayInputStream(input.getBytes()), new PrintStream(out), new PrintStream(err)).run();
+
+    assertEquals(Arrays.asList("x = 1\n", "def f():\n  return x\n\n", "1/0\n", "print(f())\n"), queued);
+    String printed = out.toString();
+    assertTrue(printed.startsWith(Repl.PROMPT));
+    assertTrue(printed.contains("out 1\n"));
+    assertTrue(printed.contains("out 4\n"));
+    assertEquals("ZeroDivisionError\n", err.toString());
+  }
+
+  @Test
+  @Timeout(5)
+  void testClosedInterpreter() {
+    ManagedInterpreter interpreter = Mockito.mock(ManagedInterpreter.class);
+    CompletableFuture<EvalResult> closed = new CompletableFuture<EvalResult>();
+    closed.completeExceptionally(new IllegalStateException("Interpreter closed"));
+    Mockito.when(interpreter.submitInteractive(Mockito.anyString())).thenReturn(closed);
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    new Repl(interpreter, new ByteArrayInputStream("x = 1\n".getBytes()), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err)).run();
+
+    assertEquals("Interpreter closed\n", err.toString());
+  }
+
+}
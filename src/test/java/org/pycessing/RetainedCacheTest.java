@@ -0,0 +1,84 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import processing.core.PApplet;
+
+class RetainedCacheTest {
+
+  private PApplet applet;
+
+  private static byte[] ints(int... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+    buffer.asIntBuffer().put(values);
+    return buffer.array();
+  }
+
+  private static byte[] floats(float... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+    buffer.asFloatBuffer().put(values);
+    return buffer.array();
+  }
+
+  @BeforeEach
+  void setUp() {
+    applet = mock(PApplet.class);
+  }
+
+  @Test
+  void testReplay() {
+    RetainedCache cache = new RetainedCache(applet);
+    assertFalse(cache.replay("grid|10"));
+    cache.store("grid|10", ints(DrawCommandBuffer.LINE_4, DrawCommandBuffer.LINE_4), floats(0, 0, 10, 10, 1, 1, 2, 2));
+    assertTrue(cache.replay("grid|10"));
+    assertTrue(cache.replay("grid|10"));
+    verify(applet, times(2)).line(0f, 0f, 10f, 10f);
+    verify(applet, times(2)).line(1f, 1f, 2f, 2f);
+    assertEquals(1, cache.size());
+    assertEquals(40, cache.getBytes());
+  }
+
+  @Test
+  void testInvalidate() {
+    RetainedCache cache = new RetainedCache(applet);
+    cache.store("grid|10", ints(DrawCommandBuffer.NO_FILL_0), floats());
+    cache.store("grid|20", ints(DrawCommandBuffer.NO_FILL_0), floats());
+    cache.store("stars|", ints(DrawCommandBuffer.NO_STROKE_0), floats());
+    cache.invalidate("grid|20");
+    assertFalse(cache.replay("grid|20"));
+    cache.invalidatePrefix("grid|");
+    assertFalse(cache.replay("grid|10"));
+    assertTrue(cache.replay("stars|"));
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  void testBounded() {
+    RetainedCache cache = new RetainedCache(applet, 100);
+    byte[] ops = ints(DrawCommandBuffer.POINT_2);
+    byte[] args = floats(1, 2);
+    for (int i = 0; i < 20; i++) {
+      cache.store("point|" + i, ops, args);
+      // Recently used recordings are kept
+      cache.replay("point|0");
+    }
+    assertTrue(cache.getBytes() <= 100);
+    assertEquals(8, cache.size());
+    assertTrue(cache.replay("point|0"));
+    assertTrue(cache.replay("point|19"));
+    assertFalse(cache.replay("point|1"));
+    // Larger than the whole cache
+    cache.store("huge", new byte[64], new byte[64]);
+    assertFalse(cache.replay("huge"));
+  }
+
+}
@@ -0,0 +1,23 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class RuntimeWarmupTest {
+
+  @Test
+  void testStartedOnce() {
+    assertSame(RuntimeWarmup.start(), RuntimeWarmup.start());
+  }
+
+  @Test
+  @Timeout(30)
+  void testAwait() {
+    RuntimeWarmup.start();
+    RuntimeWarmup.await();
+    assertTrue(RuntimeWarmup.start().isDone());
+  }
+
+}
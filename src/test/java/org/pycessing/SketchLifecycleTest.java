@@ -0,0 +1,61 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+public class SketchLifecycleTest {
+
+  @Test
+  public void testAdvance() {
+    SketchLifecycle lifecycle = new SketchLifecycle();
+    assertEquals(SketchLifecycle.State.LOADING, lifecycle.getState());
+    assertTrue(lifecycle.advance(SketchLifecycle.State.SETUP));
+    assertTrue(lifecycle.hasReached(SketchLifecycle.State.SETTINGS));
+    assertFalse(lifecycle.hasReached(SketchLifecycle.State.RUNNING));
+    // States never go backwards
+    assertFalse(lifecycle.advance(SketchLifecycle.State.SETTINGS));
+    assertFalse(lifecycle.advance(SketchLifecycle.State.SETUP));
+    assertEquals(SketchLifecycle.State.SETUP, lifecycle.getState());
+    assertFalse(lifecycle.isFinished());
+  }
+
+  @Test
+  public void testListeners() {
+    SketchLifecycle lifecycle = new SketchLifecycle();
+    List<String> seen = new ArrayList<String>();
+    SketchLifecycle.Listener listener = (from, to) -> seen.add(from + "->" + to);
+    lifecycle.addListener(listener);
+    lifecycle.advance(SketchLifecycle.State.SETTINGS);
+    lifecycle.advance(SketchLifecycle.State.RUNNING);
+    lifecycle.removeListener(listener);
+    lifecycle.advance(SketchLifecycle.State.FINISHED);
+    assertEquals("[LOADING->SETTINGS, SETTINGS->RUNNING]", seen.toString());
+  }
+
+  @Test
+  public void testSkippedStatesComplete() {
+    SketchLifecycle lifecycle = new SketchLifecycle();
+    lifecycle.advance(SketchLifecycle.State.FINISHED);
+    assertTrue(lifecycle.whenReached(SketchLifecycle.State.SETUP).isDone());
+    assertEquals(SketchLifecycle.State.FINISHED, lifecycle.whenReached(SketchLifecycle.State.RUNNING).join());
+  }
+
+  @Test
+  @Timeout(5)
+  public void testAwait() throws InterruptedException {
+    SketchLifecycle lifecycle = new SketchLifecycle();
+    assertFalse(lifecycle.await(SketchLifecycle.State.FINISHED, 10, TimeUnit.MILLISECONDS));
+    Thread finisher = new Thread(() -> lifecycle.advance(SketchLifecycle.State.FINISHED));
+    finisher.start();
+    lifecycle.await(SketchLifecycle.State.FINISHED);
+    assertTrue(lifecycle.isFinished());
+    finisher.join();
+  }
+
+}
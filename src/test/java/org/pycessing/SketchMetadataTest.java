@@ -0,0 +1,86 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SketchMetadataTest {
+
+  @TempDir
+  public File testDir;
+
+  @Test
+  public void testSize() {
+    SketchMetadata metadata = SketchMetadata.parse("def setup():\n    size(300, 200, P2D)\n    background(0)\n");
+    assertTrue(metadata.hasSetup());
+    assertEquals(300, metadata.getWidth());
+    assertEquals(200, metadata.getHeight());
+    assertEquals("P2D", metadata.getRenderer());
+    assertFalse(metadata.isFullScreen());
+  }
+
+  @Test
+  public void testMultiLineAndKeywords() {
+    SketchMetadata metadata = SketchMetadata.parse("# size(1, 1)\n"
+        + "s = '''\ndef setup():\n  size(2, 2)\n'''\n"
+        + "def setup():\n"
+        + "  text = \"size(3, 3)\"  # size(4, 4)\n"
+        + "  size(640,\n"
+        + "       height=480, renderer=\"P3D\")\n"
+        + "size(5, 5)\n");
+    assertEquals(640, metadata.getWidth());
+    assertEquals(480, metadata.getHeight());
+    assertEquals("P3D", metadata.getRenderer());
+  }
+
+  @Test
+  public void testSettingsCalls() {
+    SketchMetadata metadata = SketchMetadata.parse("def settings():\r\n"
+        + "\tfullScreen(P2D, 2)\r\n"
+        + "\tsmooth(4)\r\n"
+        + "\tpixelDensity(displayDensity())\r\n"
+        + "def setup(): noSmooth()\r\n");
+    assertTrue(metadata.isFullScreen());
+    assertEquals("P2D", metadata.getRenderer());
+    assertEquals(2, metadata.getDisplay());
+    assertEquals(0, metadata.getSmooth());
+    assertEquals(SketchMetadata.DISPLAY_DENSITY, metadata.getPixelDensity());
+
+    metadata = SketchMetadata.parse("def setup():\n  fullScreen(SPAN)\n  smooth()\n  pixelDensity(2)\n");
+    assertEquals(0, metadata.getDisplay());
+    assertNull(metadata.getRenderer());
+    assertEquals(1, metadata.getSmooth());
+    assertEquals(2, metadata.getPixelDensity());
+  }
+
+  @Test
+  public void testUnresolvable() {
+    SketchMetadata metadata = SketchMetadata.parse("w = 10\ndef setup():\n  size(w, 20 * 2)\n");
+    assertEquals(SketchMetadata.UNSET, metadata.getWidth());
+    assertEquals(SketchMetadata.UNSET, metadata.getHeight());
+    assertFalse(SketchMetadata.parse("def draw():\n  size(10, 10)\n").hasSetup());
+    assertEquals(SketchMetadata.UNSET, SketchMetadata.parse("def setup():\n  size(10,").getWidth());
+  }
+
+  @Test
+  public void testReadCached() throws IOException {
+    Path sketch = testDir.toPath().resolve("sketch.py");
+    Files.write(sketch, "def setup():\n  size(100, 100)\n".getBytes());
+    SketchMetadata first = SketchMetadata.read(sketch);
+    assertSame(first, SketchMetadata.read(sketch));
+
+    Files.write(sketch, "def setup():\n  size(250, 100)\n".getBytes());
+    Files.setLastModifiedTime(sketch, FileTime.fromMillis(Files.getLastModifiedTime(sketch).toMillis() + 2000));
+    SketchMetadata second = SketchMetadata.read(sketch);
+    assertNotSame(first, second);
+    assertEquals(250, second.getWidth());
+  }
+
+}
@@ -0,0 +1,73 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PConstants;
+
+class SketchNamespaceTest {
+
+  private Object constant(String name) {
+    List<String> names = Arrays.asList(SketchNamespace.getConstantNames());
+    int i = names.indexOf(name);
+    assertTrue(i >= 0, name + " should be a constant");
+    return SketchNamespace.getConstantValues()[i];
+  }
+
+  @Test
+  void testApiNames() {
+    List<String> names = Arrays.asList(SketchNamespace.getApiNames());
+    assertTrue(names.contains("ellipse"));
+    assertTrue(names.contains("size"));
+    // Overloads are bound once
+    assertEquals(names.indexOf("fill"), names.lastIndexOf("fill"));
+    for (String function : ManagedInterpreter.SKETCH_FUNCTIONS) {
+      assertFalse(names.contains(function), function + " should be left to the sketch");
+    }
+    assertFalse(names.contains("print"));
+  }
+
+  @Test
+  void testDrawingNames() {
+    List<String> drawing = Arrays.asList(SketchNamespace.getDrawingNames());
+    assertTrue(drawing.contains("text"));
+    assertTrue(drawing.contains("image"));
+    assertTrue(drawing.contains("rect"));
+    assertFalse(drawing.contains("random"));
+    assertFalse(drawing.contains("color"));
+    assertTrue(Arrays.asList(SketchNamespace.getApiNames()).containsAll(drawing));
+  }
+
+  @Test
+  void testConstantValues() {
+    assertEquals(PConstants.PI, constant("PI"));
+    assertEquals(PConstants.JAVA2D, constant("JAVA2D"));
+    assertEquals(PConstants.CENTER, constant("CENTER"));
+    assertEquals(PConstants.ESC, constant("ESC"));
+    assertArrayEquals(PConstants.platformNames, (String[]) constant("platformNames"));
+    assertEquals(0, constant(FrameState.FRAME_COUNT));
+  }
+
+  @Test
+  void testTablesLineUp() {
+    assertEquals(SketchNamespace.getConstantNames().length, SketchNamespace.getConstantValues().length);
+    Object[] args = SketchNamespace.bindArguments(null);
+    assertEquals(2, args.length);
+    assertEquals(SketchNamespace.moduleSource(), args[1]);
+  }
+
+  @Test
+  void testModuleSource() {
+    String source = SketchNamespace.moduleSource();
+    assertTrue(source.contains("\nAPI_NAMES = ('abs',"));
+    assertTrue(source.contains("\ndef __bind__(target):\n"));
+    for (String name : SketchNamespace.getConstantNames()) {
+      assertTrue(source.contains("\n" + name + " = "), name + " should be in the module");
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import jep.JepException;
+
+class SketchRunnerTest {
+
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  // A connector with a mocked interpreter whose draw() takes a little while
+  private PAppletConnector newConnector() {
+    ManagedInterpreter interpreter = Mockito.mock(ManagedInterpreter.class);
+    try {
+      Mockito.when(interpreter.hasSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true);
+      Mockito.when(interpreter.callSketchFunction(ManagedInterpreter.DRAW)).then(invocation -> {
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        Thread.sleep(5);
+        running.decrementAndGet();
+        return true;
+      });
+    } catch (JepException e) {
+      e.printStackTrace();
+    }
+    PAppletConnector connector = new PAppletConnector();
+    connector.setDebug(true);
+    connector.setInterpreter(interpreter);
+    return connector;
+  }
+
+  private Path script(Path dir, String name) throws IOException {
+    Path script = dir.resolve(name);
+    Files.write(script, "def setup():\n  size(20, 10)\n\ndef draw():\n  pass\n".getBytes());
+    return script;
+  }
+
+  @Test
+  void testBadThreadCount() {
+    assertThrows(IllegalArgumentException.class, () -> new SketchRunner(0));
+  }
+
+  @Test
+  @Timeout(60)
+  void testRunAll(@TempDir Path dir) throws Exception {
+    List<Path> scripts = new ArrayList<Path>();
+    for (int i = 0; i < 6; i++) {
+      scripts.add(script(dir, "sketch" + i + ".py"));
+    }
+    Path out = dir.resolve("out");
+    List<SketchResult> results;
+    try (SketchRunner runner = new SketchRunner(2, 1024, this::newConnector)) {
+      results = runner.runAll(scripts, 4, out);
+    }
+
+    assertEquals(6, results.size());
+    for (int i = 0; i < 6; i++) {
+      SketchResult result = results.get(i);
+      assertTrue(result.succeeded(), result.toString());
+      assertEquals(scripts.get(i), result.getScript());
+      assertEquals(4, result.getFramesDrawn());
+      assertTrue(Files.exists(PAppletConnector.framePath(out.resolve("sketch" + i), 4)));
+    }
+    assertTrue(maxRunning.get() <= 2, "at most two sketches at once, saw " + maxRunning.get());
+  }
+
+  @Test
+  @Timeout(30)
+  void testMissingScriptFails(@TempDir Path dir) throws InterruptedException, ExecutionException {
+    try (SketchRunner runner = new SketchRunner(1, 1024, this::newConnector)) {
+      SketchResult result = runner.submit(dir.resolve("missing.py"), 1, null).get();
+      assertFalse(result.succeeded());
+      assertEquals(0, result.getFramesDrawn());
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  void testErrorInDrawFails(@TempDir Path dir) throws Exception {
+    Supplier<PAppletConnector> failing = () -> {
+      ManagedInterpreter interpreter = Mockito.mock(ManagedInterpreter.class);
+      try {
+        Mockito.when(interpreter.hasSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true);
+        Mockito.when(interpreter.callSketchFunction(ManagedInterpreter.DRAW)).thenReturn(true)
+            .thenThrow(new JepException("<class 'ZeroDivisionError'>: division by zero"));
+      } catch (JepException e) {
+        e.printStackTrace();
+      }
+      PAppletConnector connector = new PAppletConnector();
+      connector.setDebug(true);
+      connector.setInterpreter(interpreter);
+      return connector;
+    };
+    try (SketchRunner runner = new SketchRunner(1, 4096, failing)) {
+      SketchResult result = runner.submit(script(dir, "a.py"), 5, null).get();
+      assertFalse(result.succeeded());
+      assertTrue(result.getFailure() instanceof JepException);
+      // The traceback goes to the sketch's own error output
+      assertTrue(result.getError().contains("ZeroDivisionError"), result.getError());
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  void testOutputIsCapturedPerSketch(@TempDir Path dir) throws Exception {
+    List<Path> scripts = Arrays.asList(script(dir, "a.py"), script(dir, "b.py"));
+    try (SketchRunner runner = new SketchRunner(2, 1024, this::newConnector)) {
+      for (SketchResult result : runner.runAll(scripts, 1, null)) {
+        // The mocked interpreter doesn't print, but each sketch gets its own buffer
+        assertEquals("", result.getOutput());
+        assertEquals("", result.getError());
+      }
+    }
+  }
+
+}
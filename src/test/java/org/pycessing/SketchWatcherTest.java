@@ -0,0 +1,57 @@
+package org.pycessing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SketchWatcherTest {
+
+  @TempDir
+  public File testDir;
+
+  private static void awaitChange(SketchWatcher watcher) throws InterruptedException {
+    while (!watcher.pollChange()) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  public void testPythonChanges() throws IOException, InterruptedException {
+    Path sketch = testDir.toPath().resolve("sketch.py");
+    Files.write(sketch, "speed = 1\n".getBytes());
+    Files.createDirectories(testDir.toPath().resolve("shapes"));
+    try (SketchWatcher watcher = new SketchWatcher(sketch)) {
+      assertEquals(testDir.toPath().toAbsolutePath(), watcher.getDirectory());
+      assertFalse(watcher.pollChange());
+
+      Files.write(sketch, "speed = 2\n".getBytes());
+      awaitChange(watcher);
+      // Reported once
+      assertFalse(watcher.pollChange());
+
+      Files.write(testDir.toPath().resolve("shapes").resolve("star.py"), "points = 5\n".getBytes());
+      awaitChange(watcher);
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  public void testOtherFilesIgnored() throws IOException, InterruptedException {
+    Path sketch = testDir.toPath().resolve("sketch.py");
+    Files.write(sketch, "speed = 1\n".getBytes());
+    try (SketchWatcher watcher = new SketchWatcher(sketch)) {
+      Files.write(testDir.toPath().resolve("notes.txt"), "not python".getBytes());
+      Thread.sleep(500);
+      assertFalse(watcher.pollChange());
+    }
+  }
+
+}